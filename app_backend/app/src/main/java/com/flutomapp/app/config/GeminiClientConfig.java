@@ -0,0 +1,48 @@
+package com.flutomapp.app.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class GeminiClientConfig {
+
+    @Value("${gemini.http.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${gemini.http.keep-alive-seconds:300}")
+    private long keepAliveSeconds;
+
+    /**
+     * Async completion stages of Gemini calls run here. Virtual threads, so a slow
+     * response never pins a platform thread.
+     */
+    @Bean(name = "geminiExecutor", destroyMethod = "shutdown")
+    public ExecutorService geminiExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("gemini-", 0).factory());
+    }
+
+    /**
+     * One shared client for every Gemini call: a single multiplexed HTTP/2
+     * connection (HTTP/1.1 keep-alive pool as fallback) instead of a new TLS
+     * handshake per request.
+     */
+    @Bean(name = "geminiHttpClient")
+    public HttpClient geminiHttpClient(ExecutorService geminiExecutor) {
+        // Read once by the JDK connection pool, so it must be set before the first client is built
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+        }
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(geminiExecutor)
+                .build();
+    }
+}
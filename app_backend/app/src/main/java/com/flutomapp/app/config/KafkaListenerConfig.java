@@ -0,0 +1,25 @@
+package com.flutomapp.app.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+@Configuration
+public class KafkaListenerConfig {
+
+    /**
+     * With pipeline.virtual-threads=true the pipeline consumers run on virtual
+     * threads. Stages spend most of their time blocked on Gemini, flutter and
+     * disk, so listener concurrency can then be raised to the partition count
+     * without tying up a platform thread per partition.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pipeline.virtual-threads", havingValue = "true")
+    public ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> virtualThreadListeners() {
+        return container -> container.getContainerProperties()
+                .setListenerTaskExecutor(new VirtualThreadTaskExecutor(container.getListenerId() + "-"));
+    }
+}
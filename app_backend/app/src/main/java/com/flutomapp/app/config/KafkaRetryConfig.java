@@ -0,0 +1,45 @@
+package com.flutomapp.app.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.flutomapp.app.kafka.PipelineStage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaRetryTopic;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-blocking retries for the pipeline topics. A failed record is forwarded to
+ * a delayed retry topic (one per backoff step, e.g. project.step.finalize-retry-10000)
+ * so the partition keeps moving, and after the last attempt to the -dlt topic,
+ * whose handler is ProjectPipelineConsumer.handleDeadLetter.
+ */
+@Configuration
+@EnableKafkaRetryTopic
+public class KafkaRetryConfig {
+
+    @Bean
+    public RetryTopicConfiguration pipelineRetryTopics(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                                       @Value("${pipeline.retry.attempts:4}") int attempts,
+                                                       @Value("${pipeline.retry.initial-delay-ms:10000}") long initialDelayMs,
+                                                       @Value("${pipeline.retry.multiplier:3}") double multiplier,
+                                                       @Value("${pipeline.retry.max-delay-ms:300000}") long maxDelayMs,
+                                                       @Value("${pipeline.topic-partitions:3}") int partitions) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopics(Arrays.stream(PipelineStage.values()).map(PipelineStage::getTopic).toList())
+                .maxAttempts(attempts)
+                .exponentialBackoff(initialDelayMs, multiplier, maxDelayMs)
+                // Undecodable events and expired or invalid blob references fail the same way every time
+                .notRetryOn(List.of(JsonProcessingException.class, FileNotFoundException.class, IllegalArgumentException.class))
+                .traversingCauses(true)
+                .autoCreateTopicsWith(partitions, (short) 1)
+                .dltHandlerMethod("projectPipelineConsumer", "handleDeadLetter")
+                .create(kafkaTemplate);
+    }
+}
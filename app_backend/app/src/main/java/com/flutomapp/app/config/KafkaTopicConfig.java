@@ -2,6 +2,7 @@ package com.flutomapp.app.config;
 
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -9,16 +10,32 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaTopicConfig {
 
+    public static final String TOPIC_CREATE = "project.step.create";
     public static final String TOPIC_ENV_CONFIG = "project.step.env-config";
     public static final String TOPIC_PERMISSIONS_CONFIG = "project.step.permissions-config";
     public static final String TOPIC_APPICON_CONFIG = "project.step.appicon-config";
     public static final String TOPIC_FIREBASE_CONFIG = "project.step.firebase-config";
     public static final String TOPIC_FINALIZE = "project.step.finalize";
 
+    // Events are keyed by project id, so a project's records stay in order on one partition
+    private final int partitions;
+
+    public KafkaTopicConfig(@Value("${pipeline.topic-partitions:3}") int partitions) {
+        this.partitions = partitions;
+    }
+
+    @Bean
+    public NewTopic createTopic() {
+        return TopicBuilder.name(TOPIC_CREATE)
+                .partitions(partitions)
+                .replicas(1)
+                .build();
+    }
+
     @Bean
     public NewTopic envConfigTopic() {
         return TopicBuilder.name(TOPIC_ENV_CONFIG)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -26,7 +43,7 @@ public class KafkaTopicConfig {
     @Bean
     public NewTopic permissionsConfigTopic() {
         return TopicBuilder.name(TOPIC_PERMISSIONS_CONFIG)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -34,7 +51,7 @@ public class KafkaTopicConfig {
     @Bean
     public NewTopic appIconConfigTopic() {
         return TopicBuilder.name(TOPIC_APPICON_CONFIG)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -42,7 +59,7 @@ public class KafkaTopicConfig {
     @Bean
     public NewTopic firebaseConfigTopic() {
         return TopicBuilder.name(TOPIC_FIREBASE_CONFIG)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -50,7 +67,7 @@ public class KafkaTopicConfig {
     @Bean
     public NewTopic finalizeTopic() {
         return TopicBuilder.name(TOPIC_FINALIZE)
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
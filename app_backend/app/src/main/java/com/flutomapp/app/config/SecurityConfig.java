@@ -43,7 +43,7 @@ public class SecurityConfig {
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http.csrf((csrf)->csrf.disable())
-                .authorizeHttpRequests((req)->req.requestMatchers("/auth/**").permitAll().requestMatchers("/organisation").permitAll().requestMatchers("/health").permitAll()
+                .authorizeHttpRequests((req)->req.requestMatchers("/auth/**").permitAll().requestMatchers("/organisation").permitAll().requestMatchers("/health").permitAll().requestMatchers("/actuator/health").permitAll()
                 .anyRequest().authenticated())
                 .sessionManagement((session)->session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
         http.addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
@@ -65,12 +65,23 @@ public class BuildController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Serves the build artifact for the requesting device. Clients pass their
+     * supported ABIs (most preferred first, e.g. Build.SUPPORTED_ABIS) via the
+     * `abi` query parameter or the X-Device-Abis header.
+     */
     @GetMapping("/{buildId}/download")
-    public ResponseEntity<Resource> downloadApk(@PathVariable String buildId) {
+    public ResponseEntity<Resource> downloadApk(
+            @PathVariable String buildId,
+            @RequestParam(value = "abi", required = false) List<String> abiParams,
+            @RequestHeader(value = "X-Device-Abis", required = false) String abiHeader) {
         try {
-            Resource resource = buildService.getApkResource(buildId);
-            String contentType = "application/vnd.android.package-archive";
-            String headerValue = "attachment; filename=\"" + buildId + ".apk\"";
+            Resource resource = buildService.getApkResource(buildId, parseDeviceAbis(abiParams, abiHeader));
+            String fileName = resource.getFilename() != null ? resource.getFilename() : buildId + ".apk";
+            String contentType = fileName.endsWith(".aab")
+                    ? "application/octet-stream"
+                    : "application/vnd.android.package-archive";
+            String headerValue = "attachment; filename=\"" + fileName + "\"";
 
             return ResponseEntity.ok()
                     .contentType(MediaType.parseMediaType(contentType))
@@ -81,6 +92,27 @@ public class BuildController {
         }
     }
 
+    private List<String> parseDeviceAbis(List<String> abiParams, String abiHeader) {
+        List<String> abis = new ArrayList<>();
+        if (abiParams != null) {
+            abiParams.forEach(value -> abis.addAll(splitAbis(value)));
+        }
+        if (abiHeader != null) {
+            abis.addAll(splitAbis(abiHeader));
+        }
+        return abis;
+    }
+
+    private List<String> splitAbis(String value) {
+        List<String> abis = new ArrayList<>();
+        for (String abi : value.split(",")) {
+            if (!abi.isBlank()) {
+                abis.add(abi.trim());
+            }
+        }
+        return abis;
+    }
+
     @GetMapping("/organisation")
     public ResponseEntity<List<BuildDto>> getBuildsByOrganisation(
             @AuthenticationPrincipal UserEntity user) {
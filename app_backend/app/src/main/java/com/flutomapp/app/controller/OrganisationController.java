@@ -3,19 +3,26 @@ package com.flutomapp.app.controller;
 import com.flutomapp.app.httpmodels.OrganisationApprovalRequest;
 import com.flutomapp.app.model.NotificationEntity;
 import com.flutomapp.app.model.OrganisationEntity;
+import com.flutomapp.app.service.LlmUsageService;
 import com.flutomapp.app.service.OrganisationService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
 @RestController
 @RequestMapping("/organisation")
 public class OrganisationController {
 
     private final OrganisationService organisationService;
+    private final LlmUsageService llmUsageService;
 
-    public OrganisationController(OrganisationService organisationService) {
+    public OrganisationController(OrganisationService organisationService, LlmUsageService llmUsageService) {
         this.organisationService = organisationService;
+        this.llmUsageService = llmUsageService;
     }
 
     @PostMapping("create")
@@ -33,6 +40,16 @@ public class OrganisationController {
         return ResponseEntity.ok(organisationService.getOrganisation(organisationId));
     }
 
+    // Daily Gemini usage rollups, defaulting to the last 30 days (UTC)
+    @GetMapping("{organisationId}/llm-usage")
+    public ResponseEntity<?> getLlmUsage(@PathVariable String organisationId,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(29);
+        return ResponseEntity.ok(llmUsageService.getDailyUsage(organisationId, start, end));
+    }
+
     @PostMapping("approve")
     public ResponseEntity<?> approveJoinRequest(Authentication authentication,@RequestBody NotificationEntity notification) {
         return ResponseEntity.ok(organisationService.approveJoinRequest(authentication,notification));
@@ -1,21 +1,27 @@
 package com.flutomapp.app.controller;
 
 import com.flutomapp.app.httpmodels.ProjectCreationMetaResponse;
+import com.flutomapp.app.kafka.PipelineStage;
 import com.flutomapp.app.model.OrganisationEntity;
 import com.flutomapp.app.model.UserEntity;
 import com.flutomapp.app.repository.ProjectRepository;
 import com.flutomapp.app.service.ProjectCreationService;
+import com.flutomapp.app.service.ProjectZipper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 
@@ -25,14 +31,21 @@ public class ProjectCreationController {
 
     private final ProjectCreationService projectCreationService;
     private final ProjectRepository projectRepository;
+    private final ProjectZipper projectZipper;
 
-    public ProjectCreationController(ProjectCreationService projectCreationService, ProjectRepository projectRepository) {
+    public ProjectCreationController(ProjectCreationService projectCreationService, ProjectRepository projectRepository,
+                                     ProjectZipper projectZipper) {
         this.projectCreationService = projectCreationService;
         this.projectRepository = projectRepository;
+        this.projectZipper = projectZipper;
     }
 
+    /**
+     * Accepts the project and returns 202 once it is saved as PENDING; creation
+     * runs in the Kafka pipeline and is polled at the Location (/project/status/{id}).
+     */
     @PostMapping(value = "/create", consumes = {"multipart/form-data"})
-    public ResponseEntity<ProjectCreationMetaResponse> createProject(
+    public ResponseEntity<?> createProject(
             @RequestParam String projectName,
             @RequestParam String organisationName,
             @RequestParam String description,
@@ -45,38 +58,72 @@ public class ProjectCreationController {
             Authentication authentication
     ) {
         UserEntity user = (UserEntity) authentication.getPrincipal();
-        ProjectCreationMetaResponse result = projectCreationService.createProjectMetaOnly(
-                projectName,
-                organisationName,
-                description,
-                envKeys,
-                envValues,
-                requireFirebase,
-                googleServicesJson,
-                androidPermissions,
-                appIcon,user.getOrganisation()
-        );
-        return ResponseEntity.ok(result);
+        ProjectCreationMetaResponse result;
+        try {
+            result = projectCreationService.createProjectMetaOnly(
+                    projectName,
+                    organisationName,
+                    description,
+                    envKeys,
+                    envValues,
+                    requireFirebase,
+                    googleServicesJson,
+                    androidPermissions,
+                    appIcon,user.getOrganisation()
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/project/status/" + result.getProjectEntity().getId()))
+                .body(result);
     }
 
+    /**
+     * Serves the project's zip if finalize wrote one (projects.zip.on-finalize),
+     * otherwise zips the project directory straight into the response.
+     */
     @GetMapping("/download/{uniqueId}")
-    public ResponseEntity<Resource> downloadProjectZip(@PathVariable String uniqueId) {
-        String baseDir = projectCreationService.baseProjectsDir;
-        File zipFile = new File(baseDir + File.separator + uniqueId + ".zip");
-        if (!zipFile.exists()) {
+    public ResponseEntity<StreamingResponseBody> downloadProjectZip(@PathVariable String uniqueId) {
+        if (!projectRepository.existsById(uniqueId)) {
             return ResponseEntity.notFound().build();
         }
-        InputStreamResource resource;
+        Path zipFile = Paths.get(projectCreationService.baseProjectsDir, uniqueId + ".zip");
+        Path projectDir = Paths.get(projectCreationService.baseProjectsDir, uniqueId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + uniqueId + ".zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
         try {
-            resource = new InputStreamResource(new FileInputStream(zipFile));
-        } catch (FileNotFoundException e) {
+            if (Files.isRegularFile(zipFile)) {
+                return response.contentLength(Files.size(zipFile))
+                        .body(out -> Files.copy(zipFile, out));
+            }
+        } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + zipFile.getName() + "\"")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .contentLength(zipFile.length())
-                .body(resource);
+        if (!Files.isDirectory(projectDir)) {
+            return ResponseEntity.notFound().build();
+        }
+        return response.body(out -> projectZipper.zip(projectDir, out));
+    }
+
+    /**
+     * Resumes a project's pipeline from the given stage (CREATE, ENV, PERMISSIONS,
+     * APP_ICON, FIREBASE or FINALIZE), e.g. after it failed or was dead-lettered.
+     */
+    @PostMapping("/replay/{uniqueId}")
+    public ResponseEntity<?> replayPipeline(@PathVariable String uniqueId, @RequestParam PipelineStage from) {
+        if (!projectRepository.existsById(uniqueId)) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            projectCreationService.replayPipeline(uniqueId, from);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/project/status/" + uniqueId))
+                .build();
     }
 
     @GetMapping("/status/{uniqueId}")
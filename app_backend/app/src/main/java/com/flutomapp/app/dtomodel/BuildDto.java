@@ -1,6 +1,9 @@
 package com.flutomapp.app.dtomodel;
 
+import com.flutomapp.app.httpmodels.BuildModels.BuildMode;
+import com.flutomapp.app.httpmodels.BuildModels.BuildOutputMode;
 import com.flutomapp.app.model.BuildEntity;
+import com.flutomapp.app.model.LlmUsage;
 import com.flutomapp.app.model.OrganisationEntity;
 import com.flutomapp.app.model.ProjectEntity;
 import com.flutomapp.app.model.UserEntity;
@@ -10,7 +13,9 @@ import org.springframework.data.mongodb.core.mapping.DBRef;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class BuildDto {
@@ -42,6 +47,12 @@ public class BuildDto {
 
     private String apkLocation;
 
+    private BuildOutputMode outputMode;
+
+    private BuildMode buildMode;
+
+    private Map<String, String> artifacts = new HashMap<>();
+
     private String buildVersion;
 
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -50,6 +61,8 @@ public class BuildDto {
 
     private Long buildDurationMs;
 
+    private LlmUsage llmUsage;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -77,9 +90,13 @@ public class BuildDto {
         this.errorMessage = buildEntity.getErrorMessage();
         this.logs = buildEntity.getLogs();
         this.apkLocation = buildEntity.getApkLocation();
+        this.outputMode = buildEntity.getOutputMode();
+        this.buildMode = buildEntity.getBuildMode();
+        this.artifacts = buildEntity.getArtifacts();
         this.buildVersion = buildEntity.getBuildVersion();
         this.createdAt = buildEntity.getCreatedAt();
         this.completedAt = buildEntity.getCompletedAt();
         this.buildDurationMs = buildEntity.getBuildDurationMs();
+        this.llmUsage = buildEntity.getLlmUsage();
     }
 }
@@ -1,5 +1,6 @@
 package com.flutomapp.app.dtomodel;
 
+import com.flutomapp.app.model.LlmUsage;
 import com.flutomapp.app.model.OrganisationEntity;
 import com.flutomapp.app.model.ProjectEntity;
 import lombok.AllArgsConstructor;
@@ -32,6 +33,7 @@ public class ProjectEntityDto {
     private boolean isFirebaseConfigured = false;
     private String appIcon;
     private List<String> androidPermissions = new ArrayList<>();
+    private LlmUsage llmUsage;
 
     public ProjectEntityDto(ProjectEntity project) {
         this.id = project.getId();
@@ -46,5 +48,6 @@ public class ProjectEntityDto {
         this.envVariables = project.getEnvVariables();
         this.appIcon = project.getAppIcon();
         this.isFirebaseConfigured=project.isFirebaseConfigured();
+        this.llmUsage = project.getLlmUsage();
     }
 }
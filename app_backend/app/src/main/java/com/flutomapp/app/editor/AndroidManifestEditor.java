@@ -0,0 +1,50 @@
+package com.flutomapp.app.editor;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adds uses-permission entries to AndroidManifest.xml by text insertion, so the
+ * rest of the file (comments, attribute order, formatting) is left byte for byte.
+ */
+public final class AndroidManifestEditor {
+
+    private static final Pattern APPLICATION_TAG = Pattern.compile("(?m)^([ \\t]*)<application[\\s>]");
+
+    private AndroidManifestEditor() {
+    }
+
+    /**
+     * Inserts the missing permissions just before the application tag, indented
+     * like it. Short names such as "CAMERA" become "android.permission.CAMERA".
+     */
+    public static String addPermissions(String manifest, List<String> permissions) throws LocalEditException {
+        if (!manifest.contains("<manifest")) {
+            throw new LocalEditException("No <manifest> element");
+        }
+        Matcher application = APPLICATION_TAG.matcher(manifest);
+        if (!application.find()) {
+            throw new LocalEditException("No <application> element on a line of its own");
+        }
+        String indent = application.group(1);
+        String newline = manifest.contains("\r\n") ? "\r\n" : "\n";
+
+        StringBuilder inserted = new StringBuilder();
+        for (String permission : permissions) {
+            if (permission == null || permission.isBlank()) {
+                continue;
+            }
+            String name = permission.trim().contains(".") ? permission.trim() : "android.permission." + permission.trim();
+            Pattern existing = Pattern.compile("<uses-permission[^>]*android:name\\s*=\\s*\"" + Pattern.quote(name) + "\"");
+            if (existing.matcher(manifest).find() || inserted.indexOf("\"" + name + "\"") >= 0) {
+                continue;
+            }
+            inserted.append(indent).append("<uses-permission android:name=\"").append(name).append("\" />").append(newline);
+        }
+        if (inserted.isEmpty()) {
+            return manifest;
+        }
+        return manifest.substring(0, application.start()) + inserted + manifest.substring(application.start());
+    }
+}
@@ -0,0 +1,180 @@
+package com.flutomapp.app.editor;
+
+import java.util.List;
+
+/**
+ * Inserts lines into blocks of build.gradle / build.gradle.kts files (plugins,
+ * buildscript.dependencies, dependencies). Blocks are found by brace matching
+ * that skips strings and comments, and only blocks at the requested nesting are
+ * considered, so e.g. the dependencies inside buildscript are not confused with
+ * the top-level one. Existing lines are never rewritten.
+ */
+public final class GradleEditor {
+
+    private GradleEditor() {
+    }
+
+    /**
+     * Adds line as the last statement of the block at blockPath (e.g.
+     * ["buildscript", "dependencies"]) unless the file already contains marker.
+     */
+    public static String addToBlock(String gradle, List<String> blockPath, String line, String marker) throws LocalEditException {
+        if (gradle.contains(marker)) {
+            return gradle;
+        }
+        int from = 0;
+        int to = gradle.length();
+        int[] block = null;
+        for (String name : blockPath) {
+            block = findBlock(gradle, name, from, to);
+            if (block == null) {
+                throw new LocalEditException("No '" + String.join(".", blockPath) + "' block");
+            }
+            from = block[0] + 1;
+            to = block[1];
+        }
+        return insertBeforeClose(gradle, block, line);
+    }
+
+    /**
+     * Adds line to the top-level dependencies block, creating the block at the
+     * end of the file when there is none (recent Flutter app templates have none).
+     */
+    public static String addDependency(String gradle, String line, String marker) throws LocalEditException {
+        if (gradle.contains(marker)) {
+            return gradle;
+        }
+        if (findBlock(gradle, "dependencies", 0, gradle.length()) != null) {
+            return addToBlock(gradle, List.of("dependencies"), line, marker);
+        }
+        String newline = gradle.contains("\r\n") ? "\r\n" : "\n";
+        String base = gradle.endsWith("\n") ? gradle : gradle + newline;
+        return base + newline + "dependencies {" + newline + "    " + line + newline + "}" + newline;
+    }
+
+    /**
+     * Adds a legacy apply plugin line: after the plugins block when there is one
+     * (plugins must stay first), otherwise at the top of the file.
+     */
+    public static String addApplyPlugin(String gradle, String line, String marker) throws LocalEditException {
+        if (gradle.contains(marker)) {
+            return gradle;
+        }
+        String newline = gradle.contains("\r\n") ? "\r\n" : "\n";
+        int[] plugins = findBlock(gradle, "plugins", 0, gradle.length());
+        if (plugins == null) {
+            return line + newline + gradle;
+        }
+        int lineEnd = gradle.indexOf('\n', plugins[1]);
+        if (lineEnd < 0) {
+            return gradle + newline + newline + line + newline;
+        }
+        if (!gradle.substring(plugins[1] + 1, lineEnd).isBlank()) {
+            throw new LocalEditException("Code after the plugins block on the same line");
+        }
+        return gradle.substring(0, lineEnd + 1) + newline + line + newline + gradle.substring(lineEnd + 1);
+    }
+
+    private static String insertBeforeClose(String gradle, int[] block, String line) throws LocalEditException {
+        int open = block[0];
+        int close = block[1];
+        int closeLineStart = gradle.lastIndexOf('\n', close - 1) + 1;
+        if (!gradle.substring(closeLineStart, close).isBlank() || closeLineStart <= open) {
+            throw new LocalEditException("Block closes on a line with other code");
+        }
+        String closeIndent = gradle.substring(closeLineStart, close);
+        String newline = gradle.contains("\r\n") ? "\r\n" : "\n";
+
+        // Indent like the block's first statement, else one level (4 spaces) deeper than the brace
+        String indent = closeIndent + "    ";
+        int firstLine = gradle.indexOf('\n', open) + 1;
+        for (int i = firstLine; i > 0 && i < closeLineStart; i = gradle.indexOf('\n', i) + 1) {
+            int end = gradle.indexOf('\n', i);
+            String text = gradle.substring(i, end < 0 ? gradle.length() : end);
+            if (!text.isBlank()) {
+                indent = text.substring(0, text.length() - text.stripLeading().length());
+                break;
+            }
+        }
+        return gradle.substring(0, closeLineStart) + indent + line + newline + gradle.substring(closeLineStart);
+    }
+
+    /**
+     * [open brace, matching close brace] of the first "name {" found at nesting
+     * depth 0 within [from, to), or null.
+     */
+    static int[] findBlock(String gradle, String name, int from, int to) {
+        int depth = 0;
+        int openAt = -1;
+        int i = from;
+        while (i < to) {
+            char c = gradle.charAt(i);
+            if (c == '/' && i + 1 < to && gradle.charAt(i + 1) == '/') {
+                int end = gradle.indexOf('\n', i);
+                i = end < 0 ? to : end;
+                continue;
+            }
+            if (c == '/' && i + 1 < to && gradle.charAt(i + 1) == '*') {
+                int end = gradle.indexOf("*/", i + 2);
+                i = end < 0 ? to : end + 2;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                i = skipString(gradle, i, to);
+                continue;
+            }
+            if (c == '{') {
+                if (depth == 0 && openAt < 0 && precededBy(gradle, from, i, name)) {
+                    openAt = i;
+                }
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0 && openAt >= 0) {
+                    return new int[]{openAt, i};
+                }
+                if (depth < 0) {
+                    return null;
+                }
+            }
+            i++;
+        }
+        return null;
+    }
+
+    // Whether the code right before the brace at index ends with the identifier name
+    private static boolean precededBy(String gradle, int from, int brace, String name) {
+        int end = brace;
+        while (end > from && Character.isWhitespace(gradle.charAt(end - 1))) {
+            end--;
+        }
+        int start = end - name.length();
+        if (start < from || !gradle.startsWith(name, start)) {
+            return false;
+        }
+        return start == from || !Character.isJavaIdentifierPart(gradle.charAt(start - 1)) && gradle.charAt(start - 1) != '.';
+    }
+
+    // Index just past the string literal starting at start (handles """ and escapes)
+    private static int skipString(String gradle, int start, int to) {
+        char quote = gradle.charAt(start);
+        String triple = String.valueOf(quote).repeat(3);
+        if (gradle.startsWith(triple, start)) {
+            int end = gradle.indexOf(triple, start + 3);
+            return end < 0 ? to : end + 3;
+        }
+        int i = start + 1;
+        while (i < to) {
+            char c = gradle.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote || c == '\n') {
+                return i + 1;
+            }
+            i++;
+        }
+        return to;
+    }
+}
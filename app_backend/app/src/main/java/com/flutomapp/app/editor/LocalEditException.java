@@ -0,0 +1,12 @@
+package com.flutomapp.app.editor;
+
+/**
+ * A local editor could not apply an edit because the file doesn't have the
+ * structure it expects. The caller falls back to a Gemini edit for that file.
+ */
+public class LocalEditException extends Exception {
+
+    public LocalEditException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,72 @@
+package com.flutomapp.app.editor;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The few main.dart edits project creation needs: add an import, make main()
+ * async, and run initialisation statements at the start of main().
+ */
+public final class MainDartEditor {
+
+    private static final Pattern IMPORT = Pattern.compile("(?m)^import\\s+['\"][^'\"]+['\"][^;]*;[ \\t]*\\r?$");
+    private static final Pattern BLOCK_MAIN = Pattern.compile("(?m)^(?:Future<void>|void)\\s+main\\s*\\(\\s*\\)\\s*(?:async\\s*)?\\{");
+    private static final Pattern ARROW_MAIN = Pattern.compile("(?m)^(?:Future<void>|void)\\s+main\\s*\\(\\s*\\)\\s*(?:async\\s*)?=>\\s*([^;]+);");
+
+    private MainDartEditor() {
+    }
+
+    public static String addImport(String dart, String importUri) {
+        if (dart.contains("'" + importUri + "'") || dart.contains("\"" + importUri + "\"")) {
+            return dart;
+        }
+        String newline = dart.contains("\r\n") ? "\r\n" : "\n";
+        String statement = "import '" + importUri + "';";
+        Matcher imports = IMPORT.matcher(dart);
+        int lastImportEnd = -1;
+        while (imports.find()) {
+            lastImportEnd = imports.end();
+        }
+        if (lastImportEnd < 0) {
+            return statement + newline + dart;
+        }
+        return dart.substring(0, lastImportEnd) + newline + statement + dart.substring(lastImportEnd);
+    }
+
+    /**
+     * Makes main() "Future&lt;void&gt; main() async" and inserts the statements that are
+     * not there yet at the start of its body, in the given order.
+     */
+    public static String addToMainStart(String dart, List<String> statements) throws LocalEditException {
+        String newline = dart.contains("\r\n") ? "\r\n" : "\n";
+        String source = dart;
+
+        // void main() => runApp(...);  becomes a block body first
+        Matcher arrow = ARROW_MAIN.matcher(source);
+        if (arrow.find()) {
+            source = source.substring(0, arrow.start())
+                    + "Future<void> main() async {" + newline + "  " + arrow.group(1).trim() + ";" + newline + "}"
+                    + source.substring(arrow.end());
+        }
+
+        Matcher main = BLOCK_MAIN.matcher(source);
+        if (!main.find()) {
+            throw new LocalEditException("No top-level main() found");
+        }
+        if (main.find()) {
+            throw new LocalEditException("More than one main() found");
+        }
+        main = BLOCK_MAIN.matcher(source);
+        main.find();
+
+        StringBuilder inserted = new StringBuilder();
+        int bodyStart = main.end();
+        for (String statement : statements) {
+            if (!source.contains(statement)) {
+                inserted.append(newline).append("  ").append(statement);
+            }
+        }
+        return source.substring(0, main.start()) + "Future<void> main() async {" + inserted + source.substring(bodyStart);
+    }
+}
@@ -0,0 +1,14 @@
+package com.flutomapp.app.editor;
+
+/**
+ * One mechanical edit of a project file (path relative to the Flutter project
+ * root). The local transformation is tried first; geminiInstruction describes
+ * the same edit for the Gemini fallback when the file's structure isn't recognised.
+ */
+public record ProjectFileEdit(String path, LocalEdit local, String geminiInstruction) {
+
+    @FunctionalInterface
+    public interface LocalEdit {
+        String apply(String content) throws LocalEditException;
+    }
+}
@@ -0,0 +1,200 @@
+package com.flutomapp.app.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Line-based editor for pubspec.yaml. It understands just enough block-style
+ * YAML (top-level sections, their direct children, the flutter.assets list) to
+ * add entries in place; every other line, comment and blank is kept as is.
+ * Anything it doesn't recognise (flow style, tabs) raises LocalEditException.
+ *
+ * Edits are idempotent: adding what is already there changes nothing.
+ */
+public final class PubspecEditor {
+
+    private static final Pattern KEY_LINE = Pattern.compile("^( *)([A-Za-z0-9_.\\-]+)\\s*:(.*)$");
+    private static final Pattern LIST_ITEM = Pattern.compile("^( *)-\\s*(.*?)\\s*(#.*)?$");
+
+    private final List<String> lines;
+    private final String newline;
+
+    public PubspecEditor(String content) throws LocalEditException {
+        if (content.contains("\t")) {
+            throw new LocalEditException("pubspec.yaml contains tabs");
+        }
+        this.newline = content.contains("\r\n") ? "\r\n" : "\n";
+        this.lines = new ArrayList<>(Arrays.asList(content.split("\r?\n", -1)));
+    }
+
+    /**
+     * Adds name: constraint under dependencies (or dev_dependencies), creating the
+     * section if needed. Returns false if the package was already listed, whatever its version.
+     */
+    public boolean addDependency(String section, String name, String constraint) throws LocalEditException {
+        int start = topLevelKey(section);
+        if (start < 0) {
+            appendBlock(section, List.of(name + ": " + constraint));
+            return true;
+        }
+        int end = blockEnd(start, 0);
+        int indent = childIndent(start, end, 0);
+        if (childKey(start, end, indent, name) >= 0) {
+            return false;
+        }
+        lines.add(lastContentLine(start, end) + 1, " ".repeat(indent) + name + ": " + constraint);
+        return true;
+    }
+
+    /**
+     * Adds an entry to flutter.assets, creating the flutter section or the assets
+     * list if needed. Returns false if the asset was already listed.
+     */
+    public boolean addAsset(String asset) throws LocalEditException {
+        int flutter = topLevelKey("flutter");
+        if (flutter < 0) {
+            appendBlock("flutter", List.of("assets:", "  - " + asset));
+            return true;
+        }
+        int flutterEnd = blockEnd(flutter, 0);
+        int indent = childIndent(flutter, flutterEnd, 0);
+        int assets = childKey(flutter, flutterEnd, indent, "assets");
+        if (assets < 0) {
+            int at = lastContentLine(flutter, flutterEnd) + 1;
+            lines.add(at, " ".repeat(indent) + "assets:");
+            lines.add(at + 1, " ".repeat(indent + 2) + "- " + asset);
+            return true;
+        }
+        if (!isEmptyValue(valueOf(lines.get(assets)))) {
+            throw new LocalEditException("flutter.assets is not a block list");
+        }
+
+        int assetsEnd = blockEnd(assets, indent);
+        int itemIndent = -1;
+        for (int i = assets + 1; i < assetsEnd; i++) {
+            if (isBlankOrComment(lines.get(i))) {
+                continue;
+            }
+            Matcher item = LIST_ITEM.matcher(lines.get(i));
+            if (!item.matches()) {
+                throw new LocalEditException("Unexpected line in flutter.assets: " + lines.get(i).trim());
+            }
+            if (itemIndent < 0) {
+                itemIndent = item.group(1).length();
+            }
+            if (unquote(item.group(2)).equals(asset)) {
+                return false;
+            }
+        }
+        int at = lastContentLine(assets, assetsEnd) + 1;
+        lines.add(at, " ".repeat(itemIndent >= 0 ? itemIndent : indent + 2) + "- " + asset);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(newline, lines);
+    }
+
+    // Index of "key:" at column 0, or -1
+    private int topLevelKey(String key) throws LocalEditException {
+        for (int i = 0; i < lines.size(); i++) {
+            Matcher matcher = KEY_LINE.matcher(lines.get(i));
+            if (matcher.matches() && matcher.group(1).isEmpty() && matcher.group(2).equals(key)) {
+                if (!isEmptyValue(matcher.group(3))) {
+                    throw new LocalEditException("Top-level '" + key + "' is not a block mapping");
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Index of a direct child "key:" of the block [start, end), or -1
+    private int childKey(int start, int end, int indent, String key) {
+        for (int i = start + 1; i < end; i++) {
+            Matcher matcher = KEY_LINE.matcher(lines.get(i));
+            if (matcher.matches() && matcher.group(1).length() == indent && matcher.group(2).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // First line after start that is content indented at or left of parentIndent
+    private int blockEnd(int start, int parentIndent) {
+        for (int i = start + 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (!isBlankOrComment(line) && indentOf(line) <= parentIndent) {
+                return i;
+            }
+        }
+        return lines.size();
+    }
+
+    private int childIndent(int start, int end, int parentIndent) {
+        for (int i = start + 1; i < end; i++) {
+            if (!isBlankOrComment(lines.get(i))) {
+                return indentOf(lines.get(i));
+            }
+        }
+        return parentIndent + 2;
+    }
+
+    // New entries go after the last real entry, ahead of trailing comments and blank lines
+    private int lastContentLine(int start, int end) {
+        for (int i = end - 1; i > start; i--) {
+            if (!isBlankOrComment(lines.get(i))) {
+                return i;
+            }
+        }
+        return start;
+    }
+
+    private void appendBlock(String key, List<String> children) {
+        // Keep the file's trailing newline (the empty last element) at the end
+        int at = !lines.isEmpty() && lines.get(lines.size() - 1).isEmpty() ? lines.size() - 1 : lines.size();
+        List<String> block = new ArrayList<>();
+        if (at > 0 && !lines.get(at - 1).isBlank()) {
+            block.add("");
+        }
+        block.add(key + ":");
+        for (String child : children) {
+            block.add("  " + child);
+        }
+        lines.addAll(at, block);
+    }
+
+    private static String valueOf(String line) {
+        Matcher matcher = KEY_LINE.matcher(line);
+        return matcher.matches() ? matcher.group(3) : "";
+    }
+
+    private static boolean isEmptyValue(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+
+    private static boolean isBlankOrComment(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+
+    private static int indentOf(String line) {
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        return indent;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"") || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,19 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Non-retryable HTTP error from the Gemini API, carrying the status so callers
+ * can react to specific codes (e.g. a 404 for an expired cache).
+ */
+public class GeminiApiException extends RuntimeException {
+
+    private final int statusCode;
+
+    public GeminiApiException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
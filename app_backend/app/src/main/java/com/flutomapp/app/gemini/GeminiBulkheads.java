@@ -0,0 +1,108 @@
+package com.flutomapp.app.gemini;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Separate concurrency limits for build traffic (INTERACTIVE) and project
+ * pipeline traffic (BACKGROUND), so a degraded Gemini can tie up at most one
+ * class's share of calls. Waiting is future-based; once a bulkhead's queue is
+ * full further calls fail fast instead of piling up.
+ */
+@Component
+public class GeminiBulkheads {
+
+    private final Map<GeminiPriority, Bulkhead> bulkheads = new EnumMap<>(GeminiPriority.class);
+
+    public GeminiBulkheads(@Value("${gemini.bulkhead.interactive.max-concurrent:5}") int interactiveMaxConcurrent,
+                           @Value("${gemini.bulkhead.interactive.max-queued:20}") int interactiveMaxQueued,
+                           @Value("${gemini.bulkhead.background.max-concurrent:3}") int backgroundMaxConcurrent,
+                           @Value("${gemini.bulkhead.background.max-queued:50}") int backgroundMaxQueued,
+                           MeterRegistry registry) {
+        bulkheads.put(GeminiPriority.INTERACTIVE, new Bulkhead("interactive", interactiveMaxConcurrent, interactiveMaxQueued));
+        bulkheads.put(GeminiPriority.BACKGROUND, new Bulkhead("background", backgroundMaxConcurrent, backgroundMaxQueued));
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            Gauge.builder("gemini.bulkhead.active", bulkhead, Bulkhead::active)
+                    .tag("traffic", bulkhead.name)
+                    .register(registry);
+            Gauge.builder("gemini.bulkhead.queued", bulkhead, Bulkhead::queued)
+                    .tag("traffic", bulkhead.name)
+                    .register(registry);
+        }
+    }
+
+    public CompletableFuture<Void> acquire(GeminiPriority priority) {
+        return bulkheads.get(priority).acquire();
+    }
+
+    public void release(GeminiPriority priority) {
+        bulkheads.get(priority).release();
+    }
+
+    public int active(GeminiPriority priority) {
+        return bulkheads.get(priority).active();
+    }
+
+    public int queued(GeminiPriority priority) {
+        return bulkheads.get(priority).queued();
+    }
+
+    private static class Bulkhead {
+        private final String name;
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int active;
+
+        Bulkhead(String name, int maxConcurrent, int maxQueued) {
+            this.name = name;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+        }
+
+        synchronized CompletableFuture<Void> acquire() {
+            if (active < maxConcurrent) {
+                active++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiters.size() >= maxQueued) {
+                return CompletableFuture.failedFuture(new RuntimeException(
+                        "Gemini " + name + " bulkhead is full (" + maxConcurrent + " running, " + maxQueued + " queued)"));
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+
+        void release() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                // Permit passes straight to the next waiter; otherwise it is returned
+                if (next == null) {
+                    active--;
+                }
+            }
+            // Completed outside the lock: the waiter's continuation starts its Gemini call
+            if (next != null) {
+                next.complete(null);
+            }
+        }
+
+        synchronized int active() {
+            return active;
+        }
+
+        synchronized int queued() {
+            return waiters.size();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.flutomapp.app.gemini;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Handle to a Gemini cachedContents resource holding the first messageCount
+ * entries of a conversation. Calls that carry it send only the remaining
+ * history. valid is cleared when the cache turns out to be gone (expired or
+ * deleted) so later calls stop referencing it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GeminiCachedContent {
+    // e.g. "cachedContents/abc123"
+    private String name;
+    // cachedContents are bound to the model they were created for
+    private String model;
+    private int messageCount;
+    private long tokenCount;
+    private volatile boolean valid = true;
+}
@@ -0,0 +1,58 @@
+package com.flutomapp.app.gemini;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Per-call metadata passed alongside a prompt to GeminiAIService.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GeminiCallContext {
+
+    private GeminiPriority priority = GeminiPriority.BACKGROUND;
+
+    // Short label of the calling operation, e.g. "build.screen" or "pipeline.env"
+    private String caller;
+
+    // Optional shared prefix already cached server-side (see GeminiAIService#createCachedContent)
+    private GeminiCachedContent cachedContent;
+
+    // Usage accounting tags; any of them may be null
+    private String buildId;
+    private String projectId;
+    private String organisationId;
+
+    // Selects model and generation settings (see GeminiModelRouter)
+    private GeminiTaskClass taskClass = GeminiTaskClass.GENERAL;
+
+    public static GeminiCallContext interactive(String caller) {
+        return new GeminiCallContext(GeminiPriority.INTERACTIVE, caller, null, null, null, null, GeminiTaskClass.GENERAL);
+    }
+
+    public static GeminiCallContext background(String caller) {
+        return new GeminiCallContext(GeminiPriority.BACKGROUND, caller, null, null, null, null, GeminiTaskClass.GENERAL);
+    }
+
+    public static GeminiCallContext interactive(String caller, GeminiCachedContent cachedContent) {
+        return new GeminiCallContext(GeminiPriority.INTERACTIVE, caller, cachedContent, null, null, null, GeminiTaskClass.GENERAL);
+    }
+
+    public GeminiCallContext withTask(GeminiTaskClass taskClass) {
+        this.taskClass = taskClass;
+        return this;
+    }
+
+    public GeminiCallContext forBuild(String buildId, String projectId, String organisationId) {
+        this.buildId = buildId;
+        return forProject(projectId, organisationId);
+    }
+
+    public GeminiCallContext forProject(String projectId, String organisationId) {
+        this.projectId = projectId;
+        this.organisationId = organisationId;
+        return this;
+    }
+}
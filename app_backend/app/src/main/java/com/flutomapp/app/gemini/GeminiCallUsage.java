@@ -0,0 +1,9 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Outcome of one logical Gemini call (all retries and any cache fallback),
+ * handed to the {@link GeminiUsageListener}.
+ */
+public record GeminiCallUsage(GeminiCallContext callContext, boolean success, int retries, long latencyMs,
+                              long promptTokens, long outputTokens, long cachedTokens) {
+}
@@ -0,0 +1,162 @@
+package com.flutomapp.app.gemini;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Count-based circuit breaker around the Gemini API.
+ *
+ * CLOSED: every attempt is allowed and its outcome recorded in a sliding window.
+ * Once the window holds at least minimumCalls outcomes and the failure rate
+ * reaches the threshold, the breaker OPENs and rejects calls immediately. After
+ * openDuration a limited number of HALF_OPEN probes are let through: all of them
+ * succeeding closes the breaker, any failure re-opens it.
+ *
+ * Only dependency failures count (5xx, timeouts, I/O errors); 4xx responses
+ * including 429 are the caller's or the quota's problem and are ignored.
+ */
+@Component
+public class GeminiCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiCircuitBreaker.class);
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationMs;
+    private final int halfOpenProbes;
+    private final Counter rejected;
+
+    // Guarded by this
+    private final boolean[] window;
+    private int windowCount;
+    private int windowIndex;
+    private int windowFailures;
+    private State state = State.CLOSED;
+    private long openedAtMillis;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    public GeminiCircuitBreaker(@Value("${gemini.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+                                @Value("${gemini.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                @Value("${gemini.circuit-breaker.window-size:20}") int windowSize,
+                                @Value("${gemini.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+                                @Value("${gemini.circuit-breaker.half-open-probes:3}") int halfOpenProbes,
+                                MeterRegistry registry) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.window = new boolean[Math.max(windowSize, minimumCalls)];
+        this.openDurationMs = openDurationMs;
+        this.halfOpenProbes = halfOpenProbes;
+        this.rejected = Counter.builder("gemini.circuit_breaker.rejected")
+                .description("Gemini calls rejected without being sent")
+                .register(registry);
+        Gauge.builder("gemini.circuit_breaker.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 = closed, 1 = half-open, 2 = open")
+                .register(registry);
+        Gauge.builder("gemini.circuit_breaker.failure_rate", this, GeminiCircuitBreaker::failureRate)
+                .description("Failure percentage over the sliding window")
+                .register(registry);
+    }
+
+    /**
+     * Whether an attempt may be sent now. Every true must be followed by exactly
+     * one of onSuccess / onFailure / onIgnored.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAtMillis < openDurationMs) {
+                rejected.increment();
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= halfOpenProbes) {
+                rejected.increment();
+                return false;
+            }
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (++probeSuccesses >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && failureRate() >= failureRateThreshold) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized double failureRate() {
+        return windowCount == 0 ? 0 : windowFailures * 100.0 / windowCount;
+    }
+
+    public synchronized long retryInMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAtMillis));
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State next) {
+        logger.warn("Gemini circuit breaker {} -> {} (failure rate {}%)", state, next, String.format("%.1f", failureRate()));
+        state = next;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAtMillis = System.currentTimeMillis();
+        }
+        if (next == State.CLOSED) {
+            windowCount = 0;
+            windowIndex = 0;
+            windowFailures = 0;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.flutomapp.app.gemini;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One file in a batched edit: its project-relative path, current content and
+ * every instruction to apply to it in the same round-trip.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GeminiFileEdit {
+    private String path;
+    private String content;
+    private List<String> instructions = new ArrayList<>();
+}
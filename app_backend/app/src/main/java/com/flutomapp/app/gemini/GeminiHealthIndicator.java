@@ -0,0 +1,40 @@
+package com.flutomapp.app.gemini;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the Gemini circuit breaker and bulkheads under /actuator/health (component "gemini").
+ *
+ * Always UP, with the breaker state as a detail: an open breaker means Gemini is
+ * unavailable, not this node. DOWN would fail the public health check, get a
+ * healthy node pulled or restarted, and the restart would reset the breaker.
+ */
+@Component
+public class GeminiHealthIndicator implements HealthIndicator {
+
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiBulkheads bulkheads;
+
+    public GeminiHealthIndicator(GeminiCircuitBreaker circuitBreaker, GeminiBulkheads bulkheads) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public Health health() {
+        GeminiCircuitBreaker.State state = circuitBreaker.getState();
+        Health.Builder builder = Health.up()
+                .withDetail("circuitBreaker", state.name())
+                .withDetail("failureRatePercent", circuitBreaker.failureRate());
+        if (state == GeminiCircuitBreaker.State.OPEN) {
+            builder.withDetail("retryInMs", circuitBreaker.retryInMillis());
+        }
+        for (GeminiPriority priority : GeminiPriority.values()) {
+            builder.withDetail("bulkhead." + priority.name().toLowerCase(),
+                    bulkheads.active(priority) + " active, " + bulkheads.queued(priority) + " queued");
+        }
+        return builder.build();
+    }
+}
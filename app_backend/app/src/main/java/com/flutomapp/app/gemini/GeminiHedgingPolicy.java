@@ -0,0 +1,274 @@
+package com.flutomapp.app.gemini;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Hedged Gemini requests against tail latency.
+ *
+ * If a call has not answered within the configured percentile of recent latencies
+ * for its kind of call, one duplicate is sent; the first leg to answer wins and
+ * the other is cancelled. "Answered" means completed, or for streams the first
+ * text delta arrived (see {@link Leg#claim()}), so a stream is only ever hedged
+ * before anything was written.
+ *
+ * A budget caps hedges at budgetRatio of calls, and no hedge is sent while the
+ * circuit breaker is not closed or calls are already queueing for quota, so
+ * hedging never adds load when Gemini is struggling.
+ */
+@Component
+public class GeminiHedgingPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiHedgingPolicy.class);
+
+    private final boolean enabled;
+    private final double percentile;
+    private final int windowSize;
+    private final int minSamples;
+    private final long minDelayMs;
+    private final double budgetRatio;
+    private final double maxCredits;
+    private final ExecutorService executor;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiRateLimiter rateLimiter;
+
+    private final ConcurrentHashMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final Counter calls;
+    private final Counter issued;
+    private final Counter wins;
+    private final Counter skippedBudget;
+    private final Counter skippedPressure;
+
+    // Guarded by this
+    private double credits;
+
+    public GeminiHedgingPolicy(@Value("${gemini.hedging.enabled:false}") boolean enabled,
+                               @Value("${gemini.hedging.percentile:95}") double percentile,
+                               @Value("${gemini.hedging.window-size:200}") int windowSize,
+                               @Value("${gemini.hedging.min-samples:20}") int minSamples,
+                               @Value("${gemini.hedging.min-delay-ms:250}") long minDelayMs,
+                               @Value("${gemini.hedging.budget-ratio:0.1}") double budgetRatio,
+                               @Qualifier("geminiExecutor") ExecutorService executor,
+                               GeminiCircuitBreaker circuitBreaker,
+                               GeminiRateLimiter rateLimiter,
+                               MeterRegistry registry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.windowSize = windowSize;
+        this.minSamples = Math.min(minSamples, windowSize);
+        this.minDelayMs = minDelayMs;
+        this.budgetRatio = budgetRatio;
+        // Allows a short burst of hedges after a quiet period, never more
+        this.maxCredits = Math.max(1, budgetRatio * 20);
+        this.executor = executor;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.calls = Counter.builder("gemini.hedge.calls")
+                .description("Calls eligible for hedging")
+                .register(registry);
+        this.issued = Counter.builder("gemini.hedge.issued")
+                .description("Duplicate requests sent because the first was slow")
+                .register(registry);
+        this.wins = Counter.builder("gemini.hedge.wins")
+                .description("Hedges that answered before the original request")
+                .register(registry);
+        this.skippedBudget = Counter.builder("gemini.hedge.skipped")
+                .tag("reason", "budget")
+                .register(registry);
+        this.skippedPressure = Counter.builder("gemini.hedge.skipped")
+                .tag("reason", "pressure")
+                .register(registry);
+    }
+
+    /**
+     * Runs call once, and once more if the first leg is slow. latencyKey groups
+     * calls of comparable latency (e.g. task class and streaming or not). The
+     * result is the first leg to answer successfully; if every leg fails, the
+     * primary's error.
+     */
+    public <T> CompletableFuture<T> execute(String latencyKey, Function<Leg, CompletableFuture<T>> call) {
+        LatencyWindow window = windows.computeIfAbsent(latencyKey, key -> new LatencyWindow(windowSize));
+        Execution<T> execution = new Execution<>(window);
+
+        long delayMs = enabled ? window.percentileMillis(percentile, minSamples) : -1;
+        execution.start(call, false);
+        if (delayMs < 0) {
+            return execution.result;
+        }
+
+        calls.increment();
+        synchronized (this) {
+            credits = Math.min(maxCredits, credits + budgetRatio);
+        }
+        long delay = Math.max(delayMs, minDelayMs);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            if (execution.result.isDone() || execution.winner.get() != null) {
+                return;
+            }
+            if (circuitBreaker.getState() != GeminiCircuitBreaker.State.CLOSED || rateLimiter.queued() > 0) {
+                skippedPressure.increment();
+                return;
+            }
+            synchronized (this) {
+                if (credits < 1) {
+                    skippedBudget.increment();
+                    return;
+                }
+                credits -= 1;
+            }
+            issued.increment();
+            logger.debug("No answer for {} after {} ms, sending a hedge", latencyKey, delay);
+            execution.start(call, true);
+        });
+        return execution.result;
+    }
+
+    /**
+     * One leg of a (possibly hedged) call. The service registers each in-flight
+     * future with {@link #track} so a losing leg can be cancelled, and checks
+     * {@link #isCancelled} before starting more work (retries, stream reads).
+     */
+    public static final class Leg {
+        private final Execution<?> execution;
+        private final boolean hedge;
+        private final long startedNanos = System.nanoTime();
+        private final List<CompletableFuture<?>> inFlight = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        private Leg(Execution<?> execution, boolean hedge) {
+            this.execution = execution;
+            this.hedge = hedge;
+        }
+
+        // For calls that are never hedged (e.g. creating a cache)
+        public static Leg unhedged() {
+            return new Leg(null, false);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public <F extends CompletableFuture<?>> F track(F future) {
+            inFlight.add(future);
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        /**
+         * Claims the call for this leg: true if it is (or already was) the winner,
+         * false if another leg answered first. Streams claim on their first delta,
+         * before passing anything on; other calls are claimed on completion.
+         */
+        public boolean claim() {
+            return execution == null || execution.claim(this);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            for (CompletableFuture<?> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private final class Execution<T> {
+        final LatencyWindow window;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicReference<Leg> winner = new AtomicReference<>();
+        final List<Leg> legs = new CopyOnWriteArrayList<>();
+        final AtomicInteger pending = new AtomicInteger();
+        volatile Throwable primaryError;
+
+        Execution(LatencyWindow window) {
+            this.window = window;
+        }
+
+        void start(Function<Leg, CompletableFuture<T>> call, boolean hedge) {
+            Leg leg = new Leg(this, hedge);
+            legs.add(leg);
+            pending.incrementAndGet();
+            CompletableFuture<T> future;
+            try {
+                future = call.apply(leg);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, error) -> {
+                if (error == null && claim(leg)) {
+                    result.complete(value);
+                } else if (error != null && !hedge) {
+                    primaryError = error;
+                }
+                // Last leg out with nobody having won: report the primary's failure
+                if (pending.decrementAndGet() == 0 && !result.isDone()) {
+                    Throwable failure = primaryError != null ? primaryError : error;
+                    result.completeExceptionally(failure != null ? failure : new CancellationException("Hedged call lost"));
+                }
+            });
+        }
+
+        boolean claim(Leg leg) {
+            if (winner.compareAndSet(null, leg)) {
+                window.record(System.nanoTime() - leg.startedNanos);
+                if (leg.hedge) {
+                    wins.increment();
+                }
+                for (Leg other : legs) {
+                    if (other != leg) {
+                        other.cancel();
+                    }
+                }
+                return true;
+            }
+            return winner.get() == leg;
+        }
+    }
+
+    // Ring buffer of the most recent answer latencies for one kind of call
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int count;
+        private int index;
+
+        LatencyWindow(int size) {
+            this.samples = new long[Math.max(1, size)];
+        }
+
+        synchronized void record(long nanos) {
+            samples[index] = nanos;
+            index = (index + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        // -1 until there are enough samples to trust the estimate
+        synchronized long percentileMillis(double percentile, int minSamples) {
+            if (count == 0 || count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(rank, count - 1))]);
+        }
+    }
+}
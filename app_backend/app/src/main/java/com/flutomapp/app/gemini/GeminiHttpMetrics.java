@@ -0,0 +1,120 @@
+package com.flutomapp.app.gemini;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection-level metrics for the Gemini HTTP client, exposed through
+ * /actuator/metrics under gemini.http.*.
+ */
+@Component
+public class GeminiHttpMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter retries;
+    private final DistributionSummary requestBytes;
+    private final DistributionSummary responseBytes;
+    private final Timer timeToFirstToken;
+    private final Counter cachesCreated;
+    private final Counter cacheFallbacks;
+    private final Counter cachedTokensSaved;
+
+    public GeminiHttpMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("gemini.http.in_flight", inFlight, AtomicInteger::get)
+                .description("Gemini HTTP exchanges currently in flight")
+                .register(registry);
+        this.retries = Counter.builder("gemini.http.retries")
+                .description("Gemini HTTP attempts that were retried")
+                .register(registry);
+        this.requestBytes = DistributionSummary.builder("gemini.http.request.bytes")
+                .baseUnit("bytes")
+                .register(registry);
+        this.responseBytes = DistributionSummary.builder("gemini.http.response.bytes")
+                .baseUnit("bytes")
+                .register(registry);
+        this.timeToFirstToken = Timer.builder("gemini.stream.time_to_first_token")
+                .description("Time from sending a streaming request to the first text delta")
+                .register(registry);
+        this.cachesCreated = Counter.builder("gemini.cache.created")
+                .description("cachedContents resources created for shared prompt prefixes")
+                .register(registry);
+        this.cacheFallbacks = Counter.builder("gemini.cache.fallbacks")
+                .description("Calls resent without their cache because it was gone or rejected")
+                .register(registry);
+        this.cachedTokensSaved = Counter.builder("gemini.cache.tokens_saved")
+                .description("Prompt tokens served from a cache instead of being resent")
+                .baseUnit("tokens")
+                .register(registry);
+    }
+
+    public long exchangeStarted(long bodyBytes) {
+        inFlight.incrementAndGet();
+        requestBytes.record(bodyBytes);
+        return System.nanoTime();
+    }
+
+    public void exchangeCompleted(long startNanos, HttpResponse<?> response, long bodyBytes) {
+        inFlight.decrementAndGet();
+        responseBytes.record(bodyBytes);
+        // version shows whether the pooled connection actually negotiated HTTP/2
+        timer(String.valueOf(response.statusCode()), response.version().name())
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void exchangeFailed(long startNanos, Throwable error) {
+        inFlight.decrementAndGet();
+        String outcome;
+        if (error instanceof HttpConnectTimeoutException) {
+            outcome = "connect_timeout";
+        } else if (error instanceof HttpTimeoutException) {
+            outcome = "read_timeout";
+        } else {
+            outcome = "io_error";
+        }
+        timer(outcome, "none").record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void firstToken(long elapsedNanos) {
+        timeToFirstToken.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void cacheCreated() {
+        cachesCreated.increment();
+    }
+
+    public void cacheFallback() {
+        cacheFallbacks.increment();
+    }
+
+    public void cachedTokensSaved(long tokens) {
+        cachedTokensSaved.increment(tokens);
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private Timer timer(String status, String version) {
+        return Timer.builder("gemini.http.requests")
+                .description("Gemini HTTP exchanges by status and negotiated protocol")
+                .tag("status", status)
+                .tag("version", version)
+                .register(registry);
+    }
+}
@@ -0,0 +1,86 @@
+package com.flutomapp.app.gemini;
+
+import com.flutomapp.app.gemini.GeminiRequest.GenerationConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the model and generation settings for each {@link GeminiTaskClass}.
+ * Every setting is optional per class; unset ones keep the caller's
+ * GenerationConfig and the default gemini.model:
+ *
+ *   gemini.routing.config-edit.model=gemini-2.5-flash-lite
+ *   gemini.routing.config-edit.max-output-tokens=16384
+ *   gemini.routing.config-edit.temperature=0.1
+ *   gemini.routing.config-edit.thinking-budget=0
+ *
+ * Latency per class and model is exported as gemini.task.latency so a routing
+ * change can be checked against real traffic.
+ */
+@Component
+public class GeminiModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiModelRouter.class);
+
+    private final Map<GeminiTaskClass, Route> routes = new EnumMap<>(GeminiTaskClass.class);
+    private final MeterRegistry registry;
+
+    public GeminiModelRouter(Environment environment, MeterRegistry registry) {
+        this.registry = registry;
+        for (GeminiTaskClass taskClass : GeminiTaskClass.values()) {
+            String prefix = "gemini.routing." + taskClass.getPropertyKey() + ".";
+            String model = environment.getProperty(prefix + "model");
+            Route route = new Route(taskClass,
+                    model != null && !model.isBlank() ? model.trim() : null,
+                    environment.getProperty(prefix + "max-output-tokens", Integer.class),
+                    environment.getProperty(prefix + "temperature", Double.class),
+                    environment.getProperty(prefix + "thinking-budget", Integer.class));
+            routes.put(taskClass, route);
+            logger.info("Gemini route {}: {}", taskClass, route);
+        }
+    }
+
+    public Route route(GeminiTaskClass taskClass) {
+        return routes.get(taskClass != null ? taskClass : GeminiTaskClass.GENERAL);
+    }
+
+    public void recordLatency(GeminiTaskClass taskClass, String model, long latencyNanos, boolean success) {
+        Timer.builder("gemini.task.latency")
+                .description("Logical Gemini call latency by task class and routed model")
+                .tag("task", taskClass.getPropertyKey())
+                .tag("model", model)
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Routing decision for one task class; null fields are left as the caller set them.
+     */
+    public record Route(GeminiTaskClass taskClass, String model, Integer maxOutputTokens, Double temperature,
+                        Integer thinkingBudget) {
+
+        public String modelOr(String defaultModel) {
+            return model != null ? model : defaultModel;
+        }
+
+        public GenerationConfig applyTo(GenerationConfig base) {
+            return new GenerationConfig(
+                    temperature != null ? temperature : base.temperature(),
+                    base.topK(),
+                    base.topP(),
+                    maxOutputTokens != null ? maxOutputTokens : base.maxOutputTokens(),
+                    base.responseMimeType(),
+                    base.responseSchema(),
+                    thinkingBudget != null ? thinkingBudget : base.thinkingBudget());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Scheduling class of a Gemini call. Declaration order is queue order: when the
+ * shared quota is exhausted, waiting INTERACTIVE calls are always released first.
+ */
+public enum GeminiPriority {
+    // A user is waiting on a build (BuildService)
+    INTERACTIVE,
+    // Kafka project pipeline (ProjectCreationService stages)
+    BACKGROUND
+}
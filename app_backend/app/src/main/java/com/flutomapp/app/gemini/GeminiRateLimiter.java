@@ -0,0 +1,213 @@
+package com.flutomapp.app.gemini;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide admission control for Gemini calls, shared by builds and the
+ * project pipeline.
+ *
+ * Two continuously refilling token buckets model the quota: requests/minute and
+ * input tokens/minute. Callers queue by {@link GeminiPriority} (FIFO within a
+ * class) and receive a future that completes when they may send; nobody sleeps
+ * while waiting. A 429 with Retry-After pauses admission for everyone via
+ * {@link #backOff(Duration)}, so callers no longer retry in lockstep.
+ */
+@Component
+public class GeminiRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiRateLimiter.class);
+
+    private final double requestsPerMinute;
+    private final double tokensPerMinute;
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparing((Waiter w) -> w.priority).thenComparingLong(w -> w.sequence));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gemini-rate-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService completionExecutor;
+    private final MeterRegistry registry;
+
+    // Guarded by this
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long sequence;
+    private ScheduledFuture<?> pendingDrain;
+    private long pendingDrainAtNanos;
+
+    public GeminiRateLimiter(@Value("${gemini.rate-limit.requests-per-minute:60}") double requestsPerMinute,
+                             @Value("${gemini.rate-limit.tokens-per-minute:1000000}") double tokensPerMinute,
+                             @Qualifier("geminiExecutor") ExecutorService completionExecutor,
+                             MeterRegistry registry) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.requestsPerNano = requestsPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.tokensPerNano = tokensPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.availableRequests = requestsPerMinute;
+        this.availableTokens = tokensPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+        this.completionExecutor = completionExecutor;
+        this.registry = registry;
+        Gauge.builder("gemini.rate_limiter.queued", this, GeminiRateLimiter::queued)
+                .description("Gemini calls waiting for quota")
+                .register(registry);
+    }
+
+    /**
+     * Queues a call needing one request and roughly estimatedTokens input tokens.
+     * The returned future completes (on the Gemini executor) once both are granted.
+     * Cancelling it gives up the place in the queue.
+     */
+    public CompletableFuture<Void> acquire(GeminiPriority priority, long estimatedTokens) {
+        // A single call larger than the whole bucket would otherwise wait forever
+        long tokens = Math.max(0, Math.min(estimatedTokens, (long) tokensPerMinute));
+        Waiter waiter = new Waiter(priority, tokens);
+        synchronized (this) {
+            waiter.sequence = sequence++;
+            waiters.add(waiter);
+            drain();
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Stops admitting any call for the given delay, e.g. the Retry-After of a 429.
+     * Pauses only ever extend; a shorter delay than the current pause is ignored.
+     */
+    public synchronized void backOff(Duration delay) {
+        long until = System.nanoTime() + delay.toNanos();
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+            logger.warn("Gemini quota exhausted, pausing all calls for {} ms", delay.toMillis());
+        }
+        drain();
+    }
+
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+    /**
+     * How long the longest-waiting queued call has waited so far, 0 if none is
+     * queued. Rises as soon as callers outpace the quota, well before their
+     * completed waits show up in gemini.rate_limiter.wait.
+     */
+    public synchronized long oldestWaitMillis() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (Waiter waiter : waiters) {
+            if (!waiter.future.isDone()) {
+                oldest = Math.max(oldest, now - waiter.enqueuedNanos);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(oldest);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    // Caller holds the lock
+    private void drain() {
+        while (!waiters.isEmpty()) {
+            Waiter head = waiters.peek();
+            if (head.future.isDone()) {
+                waiters.poll();
+                continue;
+            }
+
+            long now = System.nanoTime();
+            refill(now);
+            if (pausedUntilNanos - now > 0) {
+                scheduleDrain(now, pausedUntilNanos - now);
+                return;
+            }
+            if (availableRequests >= 1 && availableTokens >= head.tokens) {
+                availableRequests -= 1;
+                availableTokens -= head.tokens;
+                waiters.poll();
+                Timer.builder("gemini.rate_limiter.wait")
+                        .description("Time Gemini calls spent waiting for quota")
+                        .tag("priority", head.priority.name())
+                        .register(registry)
+                        .record(now - head.enqueuedNanos, TimeUnit.NANOSECONDS);
+                // Completed off the lock so callers' continuations never run while holding it
+                completionExecutor.execute(() -> head.future.complete(null));
+                continue;
+            }
+
+            // Strict priority: everything behind the head waits until the head fits
+            double missingRequests = Math.max(0, 1 - availableRequests);
+            double missingTokens = Math.max(0, head.tokens - availableTokens);
+            long waitNanos = (long) Math.ceil(Math.max(missingRequests / requestsPerNano, missingTokens / tokensPerNano));
+            scheduleDrain(now, waitNanos);
+            return;
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            availableRequests = Math.min(requestsPerMinute, availableRequests + elapsed * requestsPerNano);
+            availableTokens = Math.min(tokensPerMinute, availableTokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    private void scheduleDrain(long now, long delayNanos) {
+        long delay = Math.max(delayNanos, TimeUnit.MILLISECONDS.toNanos(1));
+        long at = now + delay;
+        if (pendingDrain != null && !pendingDrain.isDone()) {
+            if (pendingDrainAtNanos - at <= 0) {
+                return;
+            }
+            pendingDrain.cancel(false);
+        }
+        pendingDrainAtNanos = at;
+        pendingDrain = scheduler.schedule(() -> {
+            synchronized (this) {
+                pendingDrain = null;
+                drain();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private static class Waiter {
+        final GeminiPriority priority;
+        final long tokens;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        long sequence;
+
+        Waiter(GeminiPriority priority, long tokens) {
+            this.priority = priority;
+            this.tokens = tokens;
+        }
+    }
+}
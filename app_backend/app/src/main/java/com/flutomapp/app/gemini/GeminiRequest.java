@@ -0,0 +1,88 @@
+package com.flutomapp.app.gemini;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * generateContent / streamGenerateContent request body. Written field by field
+ * with a JsonGenerator instead of being assembled as a Map graph and reflected over.
+ */
+public record GeminiRequest(List<Content> contents, GenerationConfig generationConfig, String cachedContent) {
+
+    // One text part per message, which is all this service ever sends
+    public record Content(String role, String text) {
+    }
+
+    // thinkingBudget null = model default; 0 turns thinking off on 2.5 models
+    public record GenerationConfig(double temperature, int topK, double topP, int maxOutputTokens,
+                                   String responseMimeType, Object responseSchema, Integer thinkingBudget) {
+
+        public static final GenerationConfig DEFAULT = new GenerationConfig(0.7, 40, 0.95, 8192, null, null, null);
+
+        public GenerationConfig withMaxOutputTokens(int tokens) {
+            return new GenerationConfig(temperature, topK, topP, tokens, responseMimeType, responseSchema, thinkingBudget);
+        }
+
+        public GenerationConfig withJsonResponse(Object schema) {
+            return new GenerationConfig(temperature, topK, topP, maxOutputTokens, "application/json", schema, thinkingBudget);
+        }
+    }
+
+    // Upper-bound guess of the serialised size so the output buffer rarely has to grow
+    public int estimatedJsonSize() {
+        long size = 512;
+        for (Content content : contents) {
+            size += content.text().length() + content.text().length() / 16 + 64;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (cachedContent != null) {
+            generator.writeStringField("cachedContent", cachedContent);
+        }
+
+        writeContents(generator, contents);
+
+        generator.writeObjectFieldStart("generationConfig");
+        generator.writeNumberField("temperature", generationConfig.temperature());
+        generator.writeNumberField("topK", generationConfig.topK());
+        generator.writeNumberField("topP", generationConfig.topP());
+        generator.writeNumberField("maxOutputTokens", generationConfig.maxOutputTokens());
+        if (generationConfig.responseMimeType() != null) {
+            generator.writeStringField("responseMimeType", generationConfig.responseMimeType());
+        }
+        if (generationConfig.responseSchema() != null) {
+            // Small static schema: the generator's codec writes it as-is
+            generator.writeFieldName("responseSchema");
+            generator.writeObject(generationConfig.responseSchema());
+        }
+        if (generationConfig.thinkingBudget() != null) {
+            generator.writeObjectFieldStart("thinkingConfig");
+            generator.writeNumberField("thinkingBudget", generationConfig.thinkingBudget());
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    // Also used for the contents of a cachedContents create request
+    public static void writeContents(JsonGenerator generator, List<Content> contents) throws IOException {
+        generator.writeArrayFieldStart("contents");
+        for (Content content : contents) {
+            generator.writeStartObject();
+            generator.writeStringField("role", content.role());
+            generator.writeArrayFieldStart("parts");
+            generator.writeStartObject();
+            generator.writeStringField("text", content.text());
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,159 @@
+package com.flutomapp.app.gemini;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * The parts of a GenerateContentResponse (or one SSE chunk of it) this service
+ * uses. Read with a streaming parser that skips everything else, so no JsonNode
+ * tree of the payload is ever built.
+ *
+ * text concatenates the parts of the first candidate; error is the API error
+ * message when the body is an error object.
+ */
+public record GeminiResponse(String text, String finishReason, Usage usage, String error) {
+
+    public record Usage(long promptTokens, long outputTokens, long cachedTokens, long totalTokens) {
+        public static final Usage NONE = new Usage(0, 0, 0, 0);
+    }
+
+    public static GeminiResponse read(JsonParser parser) throws IOException {
+        TextCollector text = new TextCollector();
+        String finishReason = null;
+        Usage usage = Usage.NONE;
+        String error = null;
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "candidates" -> finishReason = readCandidates(parser, text);
+                case "usageMetadata" -> usage = readUsage(parser);
+                case "error" -> error = readErrorMessage(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new GeminiResponse(text.result(), finishReason, usage, error);
+    }
+
+    // Only candidates[0] matters; returns its finishReason
+    private static String readCandidates(JsonParser parser, TextCollector text) throws IOException {
+        String finishReason = null;
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        boolean first = true;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (!first) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("content")) {
+                    readContent(parser, text);
+                } else if (field.equals("finishReason")) {
+                    finishReason = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return finishReason;
+    }
+
+    private static void readContent(JsonParser parser, TextCollector text) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!field.equals("parts") || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String partField = parser.currentName();
+                    parser.nextToken();
+                    if (partField.equals("text")) {
+                        text.add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+    }
+
+    private static Usage readUsage(JsonParser parser) throws IOException {
+        long prompt = 0;
+        long output = 0;
+        long cached = 0;
+        long total = 0;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return Usage.NONE;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "promptTokenCount" -> prompt = parser.getValueAsLong();
+                case "candidatesTokenCount" -> output = parser.getValueAsLong();
+                case "cachedContentTokenCount" -> cached = parser.getValueAsLong();
+                case "totalTokenCount" -> total = parser.getValueAsLong();
+                default -> parser.skipChildren();
+            }
+        }
+        return new Usage(prompt, output, cached, total);
+    }
+
+    private static String readErrorMessage(JsonParser parser) throws IOException {
+        String message = "Unknown error";
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return message;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("message")) {
+                message = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    // Nearly every response has a single text part: keep that String as-is instead of copying it through a StringBuilder
+    private static final class TextCollector {
+        private String first = "";
+        private StringBuilder joined;
+
+        void add(String part) {
+            if (joined != null) {
+                joined.append(part);
+            } else if (first.isEmpty()) {
+                first = part;
+            } else {
+                joined = new StringBuilder(first.length() + part.length()).append(first).append(part);
+            }
+        }
+
+        String result() {
+            return joined != null ? joined.toString() : first;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.flutomapp.app.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Gemini REST API, for offline benchmarks and load tests
+ * of builds and the project pipeline. Enabled with the "gemini-sim" profile,
+ * which also points gemini.api.base-url here (application-gemini-sim.properties).
+ *
+ * Modes (gemini.simulator.mode):
+ *  - synthetic: generates plausible replies (batched edits echo their files,
+ *    screens get a Dart stub) with usageMetadata sized from the request.
+ *  - replay: serves cassettes recorded earlier, keyed by the SHA-256 of
+ *    method, path and request body; a miss falls back to synthetic.
+ *  - record: forwards to the real API and stores every exchange as a cassette.
+ *
+ * Outside record mode, latency (log-normal), 429s and 5xx are injected at the
+ * configured rates. A fixed seed makes a run reproducible.
+ */
+@Component
+@Profile("gemini-sim")
+public class GeminiSimulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiSimulator.class);
+
+    private static final Pattern MODEL_ACTION = Pattern.compile("^/v1beta/models/([^/:]+):(generateContent|streamGenerateContent)$");
+    private static final Pattern BATCH_FILE = Pattern.compile(
+            "=== FILE: (.+?) ===\\n.*?Current content:\\n(.*?)\\n=== END FILE: \\1 ===", Pattern.DOTALL);
+    private static final String ORIGINAL_PUBSPEC = "Original pubspec.yaml:\n";
+
+    private final String mode;
+    private final int port;
+    private final Path cassetteDir;
+    private final String upstreamUrl;
+    private final double latencyMedianMs;
+    private final double latencySigma;
+    private final long chunkDelayMs;
+    private final double rateLimitRate;
+    private final double serverErrorRate;
+    private final int syntheticOutputTokens;
+    private final boolean replayRecordedLatency;
+    private final Random random;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong cacheSequence = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong replayMisses = new AtomicLong();
+    private final AtomicLong injectedFaults = new AtomicLong();
+    private HttpClient upstream;
+    private HttpServer server;
+
+    public GeminiSimulator(@Value("${gemini.simulator.mode:synthetic}") String mode,
+                           @Value("${gemini.simulator.port:5099}") int port,
+                           @Value("${gemini.simulator.cassette-dir:gemini-cassettes}") String cassetteDir,
+                           @Value("${gemini.simulator.upstream-url:https://generativelanguage.googleapis.com}") String upstreamUrl,
+                           @Value("${gemini.simulator.latency-median-ms:1500}") double latencyMedianMs,
+                           @Value("${gemini.simulator.latency-sigma:0.5}") double latencySigma,
+                           @Value("${gemini.simulator.stream-chunk-delay-ms:40}") long chunkDelayMs,
+                           @Value("${gemini.simulator.rate-limit-rate:0.0}") double rateLimitRate,
+                           @Value("${gemini.simulator.server-error-rate:0.0}") double serverErrorRate,
+                           @Value("${gemini.simulator.synthetic-output-tokens:600}") int syntheticOutputTokens,
+                           @Value("${gemini.simulator.replay-recorded-latency:true}") boolean replayRecordedLatency,
+                           @Value("${gemini.simulator.seed:0}") long seed) {
+        this.mode = mode;
+        this.port = port;
+        this.cassetteDir = Paths.get(cassetteDir);
+        this.upstreamUrl = upstreamUrl;
+        this.latencyMedianMs = latencyMedianMs;
+        this.latencySigma = latencySigma;
+        this.chunkDelayMs = chunkDelayMs;
+        this.rateLimitRate = rateLimitRate;
+        this.serverErrorRate = serverErrorRate;
+        this.syntheticOutputTokens = syntheticOutputTokens;
+        this.replayRecordedLatency = replayRecordedLatency;
+        // 0 = unseeded
+        this.random = seed != 0 ? new Random(seed) : new Random();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(cassetteDir);
+        if ("record".equals(mode)) {
+            upstream = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                handle(exchange);
+            } catch (Exception e) {
+                logger.error("Simulator failed on {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage(), e);
+            }
+        });
+        server.start();
+        logger.info("Gemini simulator listening on http://127.0.0.1:{} (mode {}, cassettes {})", port, mode, cassetteDir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            logger.info("Gemini simulator stopped: {} replayed, {} replay misses, {} injected faults",
+                    replayed.get(), replayMisses.get(), injectedFaults.get());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException, InterruptedException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String key = cassetteKey(method, path, body);
+
+        if ("record".equals(mode)) {
+            record(exchange, key, method, body);
+            return;
+        }
+
+        if (!"DELETE".equals(method) && injectFault(exchange)) {
+            return;
+        }
+
+        Cassette cassette = "replay".equals(mode) ? readCassette(key) : null;
+        if ("replay".equals(mode)) {
+            if (cassette != null) {
+                replayed.incrementAndGet();
+            } else {
+                replayMisses.incrementAndGet();
+                logger.warn("No cassette for {} {} ({}), synthesising", method, path, key);
+            }
+        }
+
+        if (cassette != null) {
+            Thread.sleep(replayRecordedLatency ? cassette.latencyMs() : sampleLatencyMs());
+            if (cassette.contentType().startsWith("text/event-stream")) {
+                writeEvents(exchange, cassette.status(), splitEvents(cassette.body()));
+            } else {
+                write(exchange, cassette.status(), cassette.contentType(), cassette.body());
+            }
+            return;
+        }
+
+        synthesise(exchange, method, path, body);
+    }
+
+    // ---- synthetic replies ----
+
+    private void synthesise(HttpExchange exchange, String method, String path, byte[] body) throws IOException, InterruptedException {
+        if ("DELETE".equals(method)) {
+            write(exchange, 200, "application/json", "{}");
+            return;
+        }
+        JsonNode request = objectMapper.readTree(body);
+        long promptTokens = body.length / 4 + 1;
+
+        if ("/v1beta/cachedContents".equals(path)) {
+            ObjectNode reply = objectMapper.createObjectNode();
+            reply.put("name", "cachedContents/sim-" + cacheSequence.incrementAndGet());
+            reply.putObject("usageMetadata").put("totalTokenCount", promptTokens);
+            write(exchange, 200, "application/json", reply.toString());
+            return;
+        }
+
+        Matcher matcher = MODEL_ACTION.matcher(path);
+        if (!matcher.matches()) {
+            write(exchange, 404, "application/json", error(404, "NOT_FOUND", "Unknown simulator path " + path));
+            return;
+        }
+
+        String text = syntheticText(request);
+        long cachedTokens = request.hasNonNull("cachedContent") ? promptTokens : 0;
+        Thread.sleep(sampleLatencyMs());
+
+        if ("streamGenerateContent".equals(matcher.group(2))) {
+            List<String> events = new ArrayList<>();
+            int chunkSize = 200;
+            for (int start = 0; start < text.length(); start += chunkSize) {
+                boolean last = start + chunkSize >= text.length();
+                String delta = text.substring(start, Math.min(text.length(), start + chunkSize));
+                events.add(reply(delta, last ? usage(promptTokens, text, cachedTokens) : null).toString());
+            }
+            writeEvents(exchange, 200, events);
+        } else {
+            write(exchange, 200, "application/json", reply(text, usage(promptTokens, text, cachedTokens)).toString());
+        }
+    }
+
+    private String syntheticText(JsonNode request) {
+        String prompt = lastUserText(request);
+        String mimeType = request.path("generationConfig").path("responseMimeType").asText("");
+
+        // Batched edits: hand every file back unchanged so the pipeline can carry on
+        if ("application/json".equals(mimeType)) {
+            ObjectNode reply = objectMapper.createObjectNode();
+            ArrayNode files = reply.putArray("files");
+            Matcher file = BATCH_FILE.matcher(prompt);
+            while (file.find()) {
+                files.addObject().put("path", file.group(1)).put("content", file.group(2));
+            }
+            return reply.toString();
+        }
+        int original = prompt.indexOf(ORIGINAL_PUBSPEC);
+        if (original >= 0) {
+            return prompt.substring(original + ORIGINAL_PUBSPEC.length());
+        }
+
+        // Anything else is screen or main.dart generation: a compilable stub padded to the configured size
+        StringBuilder dart = new StringBuilder("import 'package:flutter/material.dart';\n\n")
+                .append("class SimulatedScreen extends StatelessWidget {\n")
+                .append("  const SimulatedScreen({super.key});\n\n")
+                .append("  @override\n")
+                .append("  Widget build(BuildContext context) {\n")
+                .append("    return const Scaffold(body: Center(child: Text('Simulated')));\n")
+                .append("  }\n")
+                .append("}\n");
+        int line = 0;
+        while (dart.length() < syntheticOutputTokens * 4) {
+            dart.append("// simulated output line ").append(++line).append('\n');
+        }
+        return dart.toString();
+    }
+
+    private String lastUserText(JsonNode request) {
+        String text = "";
+        for (JsonNode content : request.path("contents")) {
+            if ("user".equals(content.path("role").asText())) {
+                StringBuilder parts = new StringBuilder();
+                for (JsonNode part : content.path("parts")) {
+                    parts.append(part.path("text").asText(""));
+                }
+                text = parts.toString();
+            }
+        }
+        return text;
+    }
+
+    private ObjectNode reply(String text, ObjectNode usage) {
+        ObjectNode reply = objectMapper.createObjectNode();
+        ObjectNode candidate = reply.putArray("candidates").addObject();
+        candidate.putObject("content").put("role", "model").putArray("parts").addObject().put("text", text);
+        if (usage != null) {
+            candidate.put("finishReason", "STOP");
+            reply.set("usageMetadata", usage);
+        }
+        return reply;
+    }
+
+    private ObjectNode usage(long promptTokens, String text, long cachedTokens) {
+        long outputTokens = text.length() / 4 + 1;
+        ObjectNode usage = objectMapper.createObjectNode();
+        usage.put("promptTokenCount", promptTokens);
+        usage.put("candidatesTokenCount", outputTokens);
+        usage.put("cachedContentTokenCount", cachedTokens);
+        usage.put("totalTokenCount", promptTokens + outputTokens);
+        return usage;
+    }
+
+    // ---- fault and latency injection ----
+
+    private boolean injectFault(HttpExchange exchange) throws IOException, InterruptedException {
+        double roll = random.nextDouble();
+        if (roll < rateLimitRate) {
+            injectedFaults.incrementAndGet();
+            Thread.sleep(Math.min(50, sampleLatencyMs()));
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            write(exchange, 429, "application/json", error(429, "RESOURCE_EXHAUSTED", "Simulated quota exhaustion"));
+            return true;
+        }
+        if (roll < rateLimitRate + serverErrorRate) {
+            injectedFaults.incrementAndGet();
+            Thread.sleep(sampleLatencyMs());
+            write(exchange, 503, "application/json", error(503, "UNAVAILABLE", "Simulated overload"));
+            return true;
+        }
+        return false;
+    }
+
+    // Log-normal around the median: most calls near it, with a long slow tail
+    private long sampleLatencyMs() {
+        return (long) (latencyMedianMs * Math.exp(latencySigma * random.nextGaussian()));
+    }
+
+    private String error(int code, String status, String message) {
+        ObjectNode reply = objectMapper.createObjectNode();
+        reply.putObject("error").put("code", code).put("status", status).put("message", message);
+        return reply.toString();
+    }
+
+    // ---- record / replay ----
+
+    private void record(HttpExchange exchange, String key, String method, byte[] body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(upstreamUrl + exchange.getRequestURI()))
+                .timeout(Duration.ofMinutes(5))
+                .method(method, body.length > 0 ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody());
+        for (String header : List.of("Content-Type", "Accept", "x-goog-api-key")) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value != null) {
+                request.header(header, value);
+            }
+        }
+
+        long started = System.nanoTime();
+        HttpResponse<String> response = upstream.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        String contentType = response.headers().firstValue("Content-Type").orElse("application/json");
+
+        // Only successful exchanges become cassettes; errors would poison later replays
+        if (response.statusCode() == 200) {
+            writeCassette(key, new Cassette(response.statusCode(), contentType, latencyMs, response.body()));
+        }
+        write(exchange, response.statusCode(), contentType, response.body());
+    }
+
+    private Cassette readCassette(String key) throws IOException {
+        Path file = cassetteDir.resolve(key + ".json");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return objectMapper.readValue(file.toFile(), Cassette.class);
+    }
+
+    private void writeCassette(String key, Cassette cassette) throws IOException {
+        // Write then move, so a concurrent replay never reads half a cassette
+        Path temp = Files.createTempFile(cassetteDir, key, ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), cassette);
+        Files.move(temp, cassetteDir.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String cassetteKey(String method, String path, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((method + " " + path + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> splitEvents(String sse) {
+        List<String> events = new ArrayList<>();
+        for (String line : sse.split("\r?\n")) {
+            if (line.startsWith("data:")) {
+                events.add(line.substring(5).trim());
+            }
+        }
+        return events;
+    }
+
+    // ---- responses ----
+
+    private void writeEvents(HttpExchange exchange, int status, List<String> events) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                Thread.sleep(chunkDelayMs);
+            }
+            out.write(("data: " + events.get(i) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private void write(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * One recorded exchange; the body is kept verbatim (JSON, or the raw SSE stream).
+     */
+    public record Cassette(int status, String contentType, long latencyMs, String body) {
+    }
+}
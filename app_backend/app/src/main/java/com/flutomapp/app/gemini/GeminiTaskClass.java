@@ -0,0 +1,26 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Kind of work a Gemini call does. GeminiModelRouter picks the model and
+ * generation settings per class (gemini.routing.&lt;propertyKey&gt;.*).
+ */
+public enum GeminiTaskClass {
+    // Anything not classified: default model and generation config
+    GENERAL("general"),
+    // Small mechanical edits of pubspec.yaml, main.dart, manifests and gradle files
+    CONFIG_EDIT("config-edit"),
+    // Full screen generation with build context
+    SCREEN("screen"),
+    // main.dart wiring the generated screens together
+    MAIN_DART("main-dart");
+
+    private final String propertyKey;
+
+    GeminiTaskClass(String propertyKey) {
+        this.propertyKey = propertyKey;
+    }
+
+    public String getPropertyKey() {
+        return propertyKey;
+    }
+}
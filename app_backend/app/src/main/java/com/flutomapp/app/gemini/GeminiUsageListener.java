@@ -0,0 +1,10 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Receives usage for every completed Gemini call. Called on the thread that
+ * completes the call, before the caller sees the result.
+ */
+public interface GeminiUsageListener {
+
+    void onCall(GeminiCallUsage usage);
+}
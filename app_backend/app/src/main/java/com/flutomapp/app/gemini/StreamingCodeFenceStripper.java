@@ -0,0 +1,107 @@
+package com.flutomapp.app.gemini;
+
+/**
+ * Incremental version of BuildService#cleanGeneratedCode for streamed output.
+ * Leading markdown fences (```dart / ```) are dropped once enough of the head
+ * has arrived to decide, and the trailing run of whitespace/backticks is held
+ * back until {@link #finish()} so a closing fence is never written out.
+ * Concatenating every returned piece yields exactly what cleanGeneratedCode
+ * would return for the full text.
+ */
+public class StreamingCodeFenceStripper {
+
+    private static final int HEAD_DECISION_LENGTH = 16;
+
+    private final StringBuilder head = new StringBuilder();
+    private final StringBuilder tail = new StringBuilder();
+    private boolean headResolved = false;
+    private boolean bodyStarted = false;
+
+    /**
+     * Feeds the next streamed chunk and returns the part that is safe to emit now.
+     */
+    public String accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return "";
+        }
+        if (!headResolved) {
+            head.append(chunk);
+            String pending = stripLeading(head);
+            if (pending.length() < HEAD_DECISION_LENGTH && pending.indexOf('\n') < 0) {
+                return "";
+            }
+            headResolved = true;
+            return emit(stripFence(pending));
+        }
+        return emit(chunk);
+    }
+
+    /**
+     * Flushes whatever is still held back, minus a closing fence.
+     */
+    public String finish() {
+        if (!headResolved) {
+            headResolved = true;
+            String pending = stripFence(stripLeading(head));
+            return finishTail(new StringBuilder(pending), !pending.isEmpty());
+        }
+        return finishTail(tail, bodyStarted);
+    }
+
+    private String emit(String text) {
+        if (!bodyStarted) {
+            text = stripLeading(new StringBuilder(text));
+            if (text.isEmpty()) {
+                return "";
+            }
+            bodyStarted = true;
+        }
+        tail.append(text);
+        int keepFrom = tail.length();
+        while (keepFrom > 0 && isHeldBack(tail.charAt(keepFrom - 1))) {
+            keepFrom--;
+        }
+        String ready = tail.substring(0, keepFrom);
+        tail.delete(0, keepFrom);
+        return ready;
+    }
+
+    private String finishTail(StringBuilder pending, boolean started) {
+        String rest = stripTrailing(pending.toString());
+        if (rest.endsWith("```")) {
+            rest = stripTrailing(rest.substring(0, rest.length() - 3));
+        }
+        tail.setLength(0);
+        return started ? rest : stripLeading(new StringBuilder(rest));
+    }
+
+    private static String stripFence(String text) {
+        if (text.startsWith("```dart")) {
+            return stripLeading(new StringBuilder(text.substring(7)));
+        } else if (text.startsWith("```")) {
+            return stripLeading(new StringBuilder(text.substring(3)));
+        }
+        return text;
+    }
+
+    private static boolean isHeldBack(char c) {
+        return c <= ' ' || c == '`';
+    }
+
+    // Same whitespace definition as String#trim
+    private static String stripLeading(CharSequence text) {
+        int start = 0;
+        while (start < text.length() && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return text.subSequence(start, text.length()).toString();
+    }
+
+    private static String stripTrailing(String text) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+}
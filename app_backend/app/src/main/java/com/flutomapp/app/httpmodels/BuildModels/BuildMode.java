@@ -0,0 +1,19 @@
+package com.flutomapp.app.httpmodels.BuildModels;
+
+/**
+ * Flutter compilation mode. DEBUG and PROFILE skip the full AOT release
+ * pipeline and are meant for quick internal testing.
+ */
+public enum BuildMode {
+    RELEASE,
+    PROFILE,
+    DEBUG;
+
+    public String flag() {
+        return "--" + name().toLowerCase();
+    }
+
+    public String suffix() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,13 @@
+package com.flutomapp.app.httpmodels.BuildModels;
+
+/**
+ * Which artifact(s) `flutter build` should produce for a build.
+ */
+public enum BuildOutputMode {
+    // Single multi-ABI APK (the historical behaviour)
+    FAT_APK,
+    // One APK per ABI via --split-per-abi, served per device on download
+    SPLIT_PER_ABI,
+    // Android App Bundle (.aab) for store uploads
+    APP_BUNDLE
+}
@@ -6,4 +6,6 @@ import lombok.Data;
 public class BuildRequest {
     private String instructions;
     private int initialScreenIndex;
+    private BuildOutputMode outputMode = BuildOutputMode.FAT_APK;
+    private BuildMode buildMode = BuildMode.RELEASE;
 }
@@ -2,6 +2,8 @@ package com.flutomapp.app.httpmodels.BuildModels;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 @Data
@@ -12,5 +14,7 @@ public class BuildStatus {
     private boolean isSuccess = false;
     private String errorMessage;
     private String apkFilePath;
+    // artifact key (ABI name, "universal" or "bundle") -> stored file path
+    private final Map<String, String> artifacts = new ConcurrentHashMap<>();
     private final List<String> logs = new CopyOnWriteArrayList<>();
 }
@@ -0,0 +1,29 @@
+package com.flutomapp.app.kafka;
+
+import java.io.Serializable;
+
+/**
+ * Claim check for a payload kept in the BlobStore instead of in the event: the
+ * SHA-256 of the content, which is also its address, and its size.
+ */
+public class BlobRef implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String sha256;
+    private long size;
+
+    public BlobRef() {
+    }
+
+    public BlobRef(String sha256, long size) {
+        this.sha256 = sha256;
+        this.size = size;
+    }
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+}
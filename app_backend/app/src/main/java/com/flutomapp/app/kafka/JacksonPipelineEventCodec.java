@@ -0,0 +1,43 @@
+package com.flutomapp.app.kafka;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+
+/**
+ * Jackson data binding over any Jackson format: JSON, or Smile (binary JSON with
+ * back-references for repeated property names and short strings). The reader and
+ * writer are bound once, so no per-message type lookup.
+ */
+public class JacksonPipelineEventCodec implements PipelineEventCodec {
+
+    private final String name;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public JacksonPipelineEventCodec(String name, ObjectMapper mapper) {
+        this.name = name;
+        // Fields added by newer producers are ignored during rolling upgrades
+        this.reader = mapper.readerFor(ProjectCreationEventSample.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.writer = mapper.writerFor(ProjectCreationEventSample.class);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(ProjectCreationEventSample event) throws IOException {
+        return writer.writeValueAsBytes(event);
+    }
+
+    @Override
+    public ProjectCreationEventSample decode(byte[] payload) throws IOException {
+        return reader.readValue(payload);
+    }
+}
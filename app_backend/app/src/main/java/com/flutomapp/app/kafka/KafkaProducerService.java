@@ -1,30 +1,49 @@
 package com.flutomapp.app.kafka;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends pipeline events and waits until the broker has acknowledged them
+ * (pipeline.send-timeout-ms at most), throwing otherwise. A listener whose send
+ * fails therefore fails too and goes through the retry topics, and a request
+ * whose send fails returns an error, instead of a project silently stalling.
+ */
 @Service
 public class KafkaProducerService {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final PipelineEventCodecs eventCodecs;
+    private final long sendTimeoutMillis;
 
-    public KafkaProducerService(KafkaTemplate<String, String> kafkaTemplate,
-                                ObjectMapper objectMapper) {
+    public KafkaProducerService(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                PipelineEventCodecs eventCodecs,
+                                @Value("${pipeline.send-timeout-ms:30000}") long sendTimeoutMillis) {
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+        this.eventCodecs = eventCodecs;
+        this.sendTimeoutMillis = sendTimeoutMillis;
     }
 
     public void send(String topic, ProjectCreationEventSample event) {
         try {
-            String json = objectMapper.writeValueAsString(event);
-            kafkaTemplate.send(topic, event.getUniqueId(), json);
-        } catch (JsonProcessingException e) {
+            kafkaTemplate.send(eventCodecs.record(topic, event)).get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
             throw new RuntimeException("Failed to serialize ProjectCreationEventSample", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Sending project " + event.getUniqueId() + " to " + topic + " failed: "
+                    + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Sending project " + event.getUniqueId() + " to " + topic
+                    + " was not acknowledged within " + sendTimeoutMillis + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sending project " + event.getUniqueId() + " to " + topic, e);
         }
     }
 }
-
-
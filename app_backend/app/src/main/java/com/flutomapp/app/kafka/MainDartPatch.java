@@ -0,0 +1,53 @@
+package com.flutomapp.app.kafka;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * lib/main.dart additions collected by the pipeline stages (imports, and
+ * statements to run at the start of main()), applied once in finalize like
+ * {@link PubspecPatch}. The env and Firebase stages both need main.dart, so
+ * they could not run in parallel if each edited the file itself.
+ */
+public class MainDartPatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<String> imports = new ArrayList<>();
+    private List<String> startStatements = new ArrayList<>();
+
+    public MainDartPatch() {
+    }
+
+    public void addImport(String importUri) {
+        if (!imports.contains(importUri)) {
+            imports.add(importUri);
+        }
+    }
+
+    // Statements run in the order they were first added
+    public void addStartStatement(String statement) {
+        if (!startStatements.contains(statement)) {
+            startStatements.add(statement);
+        }
+    }
+
+    public void merge(MainDartPatch other) {
+        if (other == null) {
+            return;
+        }
+        other.getImports().forEach(this::addImport);
+        other.getStartStatements().forEach(this::addStartStatement);
+    }
+
+    public boolean hasChanges() {
+        return !imports.isEmpty() || !startStatements.isEmpty();
+    }
+
+    public List<String> getImports() { return imports; }
+    public void setImports(List<String> imports) { this.imports = imports; }
+
+    public List<String> getStartStatements() { return startStatements; }
+    public void setStartStatements(List<String> startStatements) { this.startStatements = startStatements; }
+}
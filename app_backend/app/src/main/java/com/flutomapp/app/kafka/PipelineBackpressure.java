@@ -0,0 +1,317 @@
+package com.flutomapp.app.kafka;
+
+import com.flutomapp.app.gemini.GeminiBulkheads;
+import com.flutomapp.app.gemini.GeminiCircuitBreaker;
+import com.flutomapp.app.gemini.GeminiPriority;
+import com.flutomapp.app.gemini.GeminiRateLimiter;
+import com.flutomapp.app.service.ProjectPipelineJoinService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts this node's pipeline intake to what Gemini and the stages can sustain,
+ * by pausing and resuming listener containers (a paused consumer keeps its
+ * partitions and heartbeats, but fetches nothing).
+ *
+ * New projects (the create listener) stop being taken when any of these holds:
+ * - the projects this node admitted and that are still in the pipeline reach
+ *   pipeline.backpressure.max-in-flight-projects. A project is admitted when its
+ *   create record starts here and released when it is finalized or dead-lettered
+ *   (ProjectPipelineJoinService), wherever its other stages run; waiting between
+ *   stages or in a retry topic, it still counts.
+ * - the oldest call queued at the Gemini rate limiter has waited longer than max-gemini-wait-ms
+ * - the background Gemini bulkhead has more than max-gemini-queued calls waiting
+ * - the Gemini circuit breaker is open
+ * Intake resumes once the Gemini signals fall to half their limits, so it doesn't
+ * flap at the threshold. Projects already in the pipeline keep going, which is
+ * what drains the load. Up to one create record per create consumer may start
+ * between two checks, so the limit can be overshot by the create concurrency.
+ *
+ * A stage whose recent records mostly failed (error-rate-threshold percent of the
+ * last error-window-size) is paused for error-pause-seconds, then resumed with
+ * a fresh window. Its failed records are in the retry topics already.
+ *
+ * A paused stage (create included) pauses the containers of its retry topics
+ * along with its own, so nothing of the stage is fetched.
+ *
+ * Registered with Boot's listener container factory as the record interceptor,
+ * which is how it sees every record start, succeed or fail.
+ */
+@Component
+public class PipelineBackpressure implements RecordInterceptor<Object, Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineBackpressure.class);
+
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final ProjectPipelineJoinService pipelineJoinService;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiBulkheads bulkheads;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final int maxInFlightProjects;
+    private final Duration inFlightMaxAge;
+    private final long maxGeminiWaitMillis;
+    private final int maxGeminiQueued;
+    private final double errorRateThreshold;
+    private final int errorWindowSize;
+    private final long errorPauseMillis;
+    private final MeterRegistry registry;
+
+    // Projects admitted by this node and not released, as last read from the join state
+    private volatile Set<String> admitted = Set.of();
+    // Projects whose create record is running here, and may not have been admitted yet
+    private final Set<String> starting = ConcurrentHashMap.newKeySet();
+    private final Map<PipelineStage, ErrorWindow> errorWindows = new EnumMap<>(PipelineStage.class);
+    private final ScheduledExecutorService evaluator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pipeline-backpressure");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private boolean intakeSaturated;
+    private final Map<PipelineStage, Long> errorPausedUntil = new EnumMap<>(PipelineStage.class);
+
+    public PipelineBackpressure(KafkaListenerEndpointRegistry listenerRegistry,
+                                ProjectPipelineJoinService pipelineJoinService,
+                                GeminiRateLimiter rateLimiter,
+                                GeminiBulkheads bulkheads,
+                                GeminiCircuitBreaker circuitBreaker,
+                                @Value("${pipeline.backpressure.max-in-flight-projects:8}") int maxInFlightProjects,
+                                @Value("${pipeline.backpressure.in-flight-max-age-minutes:120}") long inFlightMaxAgeMinutes,
+                                @Value("${pipeline.backpressure.max-gemini-wait-ms:30000}") long maxGeminiWaitMillis,
+                                @Value("${pipeline.backpressure.max-gemini-queued:20}") int maxGeminiQueued,
+                                @Value("${pipeline.backpressure.error-rate-threshold:50}") double errorRateThreshold,
+                                @Value("${pipeline.backpressure.error-window-size:10}") int errorWindowSize,
+                                @Value("${pipeline.backpressure.error-pause-seconds:60}") long errorPauseSeconds,
+                                MeterRegistry registry) {
+        this.listenerRegistry = listenerRegistry;
+        this.pipelineJoinService = pipelineJoinService;
+        this.rateLimiter = rateLimiter;
+        this.bulkheads = bulkheads;
+        this.circuitBreaker = circuitBreaker;
+        this.maxInFlightProjects = maxInFlightProjects;
+        this.inFlightMaxAge = Duration.ofMinutes(inFlightMaxAgeMinutes);
+        this.maxGeminiWaitMillis = maxGeminiWaitMillis;
+        this.maxGeminiQueued = maxGeminiQueued;
+        this.errorRateThreshold = errorRateThreshold;
+        this.errorWindowSize = errorWindowSize;
+        this.errorPauseMillis = TimeUnit.SECONDS.toMillis(errorPauseSeconds);
+        this.registry = registry;
+        for (PipelineStage stage : PipelineStage.values()) {
+            errorWindows.put(stage, new ErrorWindow(errorWindowSize));
+            Gauge.builder("pipeline.backpressure.paused", stage, s -> isPaused(s) ? 1 : 0)
+                    .tag("stage", stage.name())
+                    .register(registry);
+        }
+        Gauge.builder("pipeline.backpressure.in_flight_projects", this, PipelineBackpressure::inFlightProjects)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        evaluator.scheduleWithFixedDelay(this::evaluate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evaluator.shutdownNow();
+    }
+
+    @Override
+    public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+        if (record.key() != null && isCreate(record)) {
+            starting.add(record.key().toString());
+        }
+        return record;
+    }
+
+    @Override
+    public void success(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+        stageOf(record.topic()).ifPresent(stage -> errorWindows.get(stage).record(false));
+    }
+
+    @Override
+    public void failure(ConsumerRecord<Object, Object> record, Exception exception, Consumer<Object, Object> consumer) {
+        stageOf(record.topic()).ifPresent(stage -> errorWindows.get(stage).record(true));
+    }
+
+    @Override
+    public void afterRecord(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+        if (record.key() == null || !isCreate(record)) {
+            return;
+        }
+        starting.remove(record.key().toString());
+        // Re-read the admissions, now including this project, so a full node pauses before its next create record
+        evaluate();
+    }
+
+    private synchronized void evaluate() {
+        try {
+            refreshAdmitted();
+            updateIntake();
+            long now = System.currentTimeMillis();
+            for (PipelineStage stage : PipelineStage.values()) {
+                Long until = errorPausedUntil.get(stage);
+                if (until != null && now >= until) {
+                    errorPausedUntil.remove(stage);
+                    errorWindows.get(stage).reset();
+                    logger.info("Resuming {} after its error pause", stage);
+                } else if (until == null && errorWindows.get(stage).failureRate() >= errorRateThreshold) {
+                    errorPausedUntil.put(stage, now + errorPauseMillis);
+                    countPause(stage, "errors");
+                    logger.warn("Pausing {} for {} ms: {}% of its last {} records failed",
+                            stage, errorPauseMillis, Math.round(errorWindows.get(stage).failureRate()), errorWindowSize);
+                }
+                boolean pause = errorPausedUntil.containsKey(stage) || (stage == PipelineStage.CREATE && intakeSaturated);
+                apply(stage, pause);
+            }
+        } catch (Exception e) {
+            logger.warn("Backpressure evaluation failed: {}", e.getMessage());
+        }
+    }
+
+    // Caller holds the lock
+    private void updateIntake() {
+        long geminiWait = rateLimiter.oldestWaitMillis();
+        int geminiQueued = bulkheads.queued(GeminiPriority.BACKGROUND);
+        boolean circuitOpen = circuitBreaker.getState() == GeminiCircuitBreaker.State.OPEN;
+        int inFlight = inFlightProjects();
+        boolean full = inFlight >= maxInFlightProjects;
+        boolean saturated = intakeSaturated
+                ? full || circuitOpen || geminiWait > maxGeminiWaitMillis / 2 || geminiQueued > maxGeminiQueued / 2
+                : full || circuitOpen || geminiWait > maxGeminiWaitMillis || geminiQueued > maxGeminiQueued;
+        if (saturated && !intakeSaturated) {
+            countPause(PipelineStage.CREATE, full ? "in_flight" : circuitOpen ? "circuit_open" : "gemini_saturated");
+            logger.warn("Pausing new projects: {} in flight, Gemini queue wait {} ms, {} queued, circuit {}",
+                    inFlight, geminiWait, geminiQueued, circuitBreaker.getState());
+        } else if (!saturated && intakeSaturated) {
+            logger.info("Resuming new projects: {} in flight, Gemini queue wait {} ms, {} queued",
+                    inFlight, geminiWait, geminiQueued);
+        }
+        intakeSaturated = saturated;
+    }
+
+    // Keeps the last known admissions if Mongo can't be read
+    private void refreshAdmitted() {
+        try {
+            admitted = pipelineJoinService.admittedProjects(inFlightMaxAge);
+        } catch (Exception e) {
+            logger.warn("Could not read this node's admitted projects: {}", e.getMessage());
+        }
+    }
+
+    private int inFlightProjects() {
+        Set<String> projects = new HashSet<>(admitted);
+        projects.addAll(starting);
+        return projects.size();
+    }
+
+    private static boolean isCreate(ConsumerRecord<Object, Object> record) {
+        return stageOf(record.topic()).filter(stage -> stage == PipelineStage.CREATE).isPresent();
+    }
+
+    private void apply(PipelineStage stage, boolean pause) {
+        for (MessageListenerContainer container : containersOf(stage)) {
+            if (container.isPauseRequested() == pause) {
+                continue;
+            }
+            if (pause) {
+                container.pause();
+            } else {
+                container.resume();
+            }
+        }
+    }
+
+    private boolean isPaused(PipelineStage stage) {
+        return containersOf(stage).stream().anyMatch(MessageListenerContainer::isPauseRequested);
+    }
+
+    // The stage's main container and its retry topics' containers, which would otherwise keep consuming
+    private List<MessageListenerContainer> containersOf(PipelineStage stage) {
+        return listenerRegistry.getListenerContainers().stream()
+                .filter(container -> {
+                    String[] topics = container.getContainerProperties().getTopics();
+                    return topics != null && Arrays.stream(topics)
+                            .anyMatch(topic -> stageOf(topic).filter(stage::equals).isPresent());
+                })
+                .toList();
+    }
+
+    private void countPause(PipelineStage stage, String reason) {
+        Counter.builder("pipeline.backpressure.pauses")
+                .tag("stage", stage.name())
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    // Main and retry topics count for their stage; dead letters don't
+    private static Optional<PipelineStage> stageOf(String topic) {
+        if (topic.endsWith("-dlt")) {
+            return Optional.empty();
+        }
+        return Arrays.stream(PipelineStage.values())
+                .filter(stage -> topic.equals(stage.getTopic()) || topic.startsWith(stage.getTopic() + "-retry"))
+                .findFirst();
+    }
+
+    // Outcomes of a stage's last records
+    private static class ErrorWindow {
+        private final boolean[] failures;
+        private int next;
+        private int size;
+        private int failed;
+
+        ErrorWindow(int capacity) {
+            this.failures = new boolean[Math.max(1, capacity)];
+        }
+
+        synchronized void record(boolean failure) {
+            if (size == failures.length) {
+                failed -= failures[next] ? 1 : 0;
+            } else {
+                size++;
+            }
+            failures[next] = failure;
+            failed += failure ? 1 : 0;
+            next = (next + 1) % failures.length;
+        }
+
+        // 0 until the window is full, so a couple of early failures don't pause a stage
+        synchronized double failureRate() {
+            return size < failures.length ? 0 : 100.0 * failed / size;
+        }
+
+        synchronized void reset() {
+            next = 0;
+            size = 0;
+            failed = 0;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.flutomapp.app.kafka;
+
+import java.io.IOException;
+
+/**
+ * Wire format of pipeline events. The codec name travels in a record header so
+ * consumers can read whatever a producer of another version wrote.
+ */
+public interface PipelineEventCodec {
+
+    String name();
+
+    byte[] encode(ProjectCreationEventSample event) throws IOException;
+
+    ProjectCreationEventSample decode(byte[] payload) throws IOException;
+}
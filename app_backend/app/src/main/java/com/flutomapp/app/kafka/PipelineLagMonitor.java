@@ -0,0 +1,128 @@
+package com.flutomapp.app.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumer group lag per pipeline stage (records on the stage's topic not yet
+ * committed by the group, summed over all its partitions, including those the
+ * group never committed on), as pipeline.consumer.lag tagged by stage. Unlike
+ * the consumers' own records-lag metrics this covers the whole group, not just
+ * the partitions assigned on this node. Retry topics are left out; their
+ * records wait on purpose.
+ */
+@Component
+public class PipelineLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineLagMonitor.class);
+
+    private final KafkaAdmin kafkaAdmin;
+    private final String groupId;
+    private final long intervalSeconds;
+    private final Map<PipelineStage, AtomicLong> lags = new EnumMap<>(PipelineStage.class);
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pipeline-lag-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private AdminClient adminClient;
+
+    public PipelineLagMonitor(KafkaAdmin kafkaAdmin,
+                              @Value("${spring.kafka.consumer.group-id:flutomapp-group}") String groupId,
+                              @Value("${pipeline.lag-monitor.interval-seconds:30}") long intervalSeconds,
+                              MeterRegistry registry) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.groupId = groupId;
+        this.intervalSeconds = intervalSeconds;
+        for (PipelineStage stage : PipelineStage.values()) {
+            AtomicLong lag = new AtomicLong();
+            lags.put(stage, lag);
+            Gauge.builder("pipeline.consumer.lag", lag, AtomicLong::get)
+                    .tag("stage", stage.name())
+                    .register(registry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+        poller.scheduleWithFixedDelay(this::poll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+
+    public long lag(PipelineStage stage) {
+        return lags.get(stage).get();
+    }
+
+    private void poll() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata().get(intervalSeconds, TimeUnit.SECONDS);
+            // Every partition of the stage topics: one the group never committed on still has its whole log to read
+            List<String> topics = Arrays.stream(PipelineStage.values()).map(PipelineStage::getTopic).toList();
+            List<TopicPartition> partitions = new ArrayList<>();
+            adminClient.describeTopics(topics).allTopicNames().get(intervalSeconds, TimeUnit.SECONDS)
+                    .forEach((topic, description) -> description.partitions()
+                            .forEach(partition -> partitions.add(new TopicPartition(topic, partition.partition()))));
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            Map<TopicPartition, OffsetSpec> earliest = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                latest.put(partition, OffsetSpec.latest());
+                if (committed.get(partition) == null) {
+                    // Where the group will start reading (auto-offset-reset=earliest): records already deleted don't count
+                    earliest.put(partition, OffsetSpec.earliest());
+                }
+            }
+            Map<TopicPartition, ListOffsetsResultInfo> ends = adminClient.listOffsets(latest)
+                    .all().get(intervalSeconds, TimeUnit.SECONDS);
+            Map<TopicPartition, ListOffsetsResultInfo> starts = earliest.isEmpty() ? Map.of()
+                    : adminClient.listOffsets(earliest).all().get(intervalSeconds, TimeUnit.SECONDS);
+
+            Map<PipelineStage, Long> totals = new EnumMap<>(PipelineStage.class);
+            ends.forEach((partition, end) -> {
+                OffsetAndMetadata offset = committed.get(partition);
+                long from = offset != null ? offset.offset() : starts.get(partition).offset();
+                long lag = Math.max(0, end.offset() - from);
+                PipelineStage.forTopic(partition.topic()).ifPresent(stage -> totals.merge(stage, lag, Long::sum));
+            });
+            lags.forEach((stage, lag) -> lag.set(totals.getOrDefault(stage, 0L)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Consumer lag poll failed: {}", e.getMessage());
+        }
+    }
+}
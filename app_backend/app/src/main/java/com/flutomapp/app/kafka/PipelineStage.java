@@ -0,0 +1,38 @@
+package com.flutomapp.app.kafka;
+
+import com.flutomapp.app.config.KafkaTopicConfig;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stages of the project creation pipeline. CREATE fans out to the configuration
+ * stages, which touch disjoint files and run in parallel; the last of them to
+ * finish dispatches FINALIZE (see ProjectPipelineJoinService).
+ */
+public enum PipelineStage {
+    CREATE(KafkaTopicConfig.TOPIC_CREATE),
+    ENV(KafkaTopicConfig.TOPIC_ENV_CONFIG),
+    PERMISSIONS(KafkaTopicConfig.TOPIC_PERMISSIONS_CONFIG),
+    APP_ICON(KafkaTopicConfig.TOPIC_APPICON_CONFIG),
+    FIREBASE(KafkaTopicConfig.TOPIC_FIREBASE_CONFIG),
+    FINALIZE(KafkaTopicConfig.TOPIC_FINALIZE);
+
+    // In merge order: patches of earlier stages come first in main.dart and pubspec.yaml
+    public static final List<PipelineStage> CONFIG_STAGES = List.of(ENV, PERMISSIONS, APP_ICON, FIREBASE);
+
+    private final String topic;
+
+    PipelineStage(String topic) {
+        this.topic = topic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public static Optional<PipelineStage> forTopic(String topic) {
+        return Arrays.stream(values()).filter(stage -> stage.topic.equals(topic)).findFirst();
+    }
+}
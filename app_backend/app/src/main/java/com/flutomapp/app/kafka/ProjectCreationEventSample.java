@@ -7,9 +7,14 @@ public class ProjectCreationEventSample implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // Sent in the event-schema-version header; bump when fields change meaning or are removed
+    public static final int SCHEMA_VERSION = 2;
+
     private String uniqueId;
     private String projectName;
     private String organisationId;
+    private String organisationName;
+    private String description;
 
     private List<String> envKeys;
     private List<String> envValues;
@@ -17,24 +22,26 @@ public class ProjectCreationEventSample implements Serializable {
     private List<String> androidPermissions;
 
     private boolean requireFirebase;
-    private String googleServicesJsonBase64;
+    // Uploads travel as claim checks into the BlobStore, not inline
+    private BlobRef googleServicesJson;
 
-    private String appIconBase64;
-    private String appIconOriginalFilename;
+    private BlobRef appIcon;
 
     private boolean envConfigured;
     private boolean permissionsConfigured;
     private boolean appIconConfigured;
     private boolean firebaseConfigured;
 
+    private PubspecPatch pubspecPatch = new PubspecPatch();
+    private MainDartPatch mainDartPatch = new MainDartPatch();
+
     public ProjectCreationEventSample() {
     }
 
     public ProjectCreationEventSample(String uniqueId, String projectName, String organisationId,
                                       List<String> envKeys, List<String> envValues,
                                       List<String> androidPermissions, boolean requireFirebase,
-                                      String googleServicesJsonBase64, String appIconBase64,
-                                      String appIconOriginalFilename, boolean envConfigured,
+                                      BlobRef googleServicesJson, BlobRef appIcon, boolean envConfigured,
                                       boolean permissionsConfigured, boolean appIconConfigured,
                                       boolean firebaseConfigured) {
         this.uniqueId = uniqueId;
@@ -44,9 +51,8 @@ public class ProjectCreationEventSample implements Serializable {
         this.envValues = envValues;
         this.androidPermissions = androidPermissions;
         this.requireFirebase = requireFirebase;
-        this.googleServicesJsonBase64 = googleServicesJsonBase64;
-        this.appIconBase64 = appIconBase64;
-        this.appIconOriginalFilename = appIconOriginalFilename;
+        this.googleServicesJson = googleServicesJson;
+        this.appIcon = appIcon;
         this.envConfigured = envConfigured;
         this.permissionsConfigured = permissionsConfigured;
         this.appIconConfigured = appIconConfigured;
@@ -62,6 +68,12 @@ public class ProjectCreationEventSample implements Serializable {
     public String getOrganisationId() { return organisationId; }
     public void setOrganisationId(String organisationId) { this.organisationId = organisationId; }
 
+    public String getOrganisationName() { return organisationName; }
+    public void setOrganisationName(String organisationName) { this.organisationName = organisationName; }
+
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+
     public List<String> getEnvKeys() { return envKeys; }
     public void setEnvKeys(List<String> envKeys) { this.envKeys = envKeys; }
 
@@ -74,14 +86,11 @@ public class ProjectCreationEventSample implements Serializable {
     public boolean isRequireFirebase() { return requireFirebase; }
     public void setRequireFirebase(boolean requireFirebase) { this.requireFirebase = requireFirebase; }
 
-    public String getGoogleServicesJsonBase64() { return googleServicesJsonBase64; }
-    public void setGoogleServicesJsonBase64(String googleServicesJsonBase64) { this.googleServicesJsonBase64 = googleServicesJsonBase64; }
+    public BlobRef getGoogleServicesJson() { return googleServicesJson; }
+    public void setGoogleServicesJson(BlobRef googleServicesJson) { this.googleServicesJson = googleServicesJson; }
 
-    public String getAppIconBase64() { return appIconBase64; }
-    public void setAppIconBase64(String appIconBase64) { this.appIconBase64 = appIconBase64; }
-
-    public String getAppIconOriginalFilename() { return appIconOriginalFilename; }
-    public void setAppIconOriginalFilename(String appIconOriginalFilename) { this.appIconOriginalFilename = appIconOriginalFilename; }
+    public BlobRef getAppIcon() { return appIcon; }
+    public void setAppIcon(BlobRef appIcon) { this.appIcon = appIcon; }
 
     public boolean isEnvConfigured() { return envConfigured; }
     public void setEnvConfigured(boolean envConfigured) { this.envConfigured = envConfigured; }
@@ -94,4 +103,10 @@ public class ProjectCreationEventSample implements Serializable {
 
     public boolean isFirebaseConfigured() { return firebaseConfigured; }
     public void setFirebaseConfigured(boolean firebaseConfigured) { this.firebaseConfigured = firebaseConfigured; }
+
+    public PubspecPatch getPubspecPatch() { return pubspecPatch; }
+    public void setPubspecPatch(PubspecPatch pubspecPatch) { this.pubspecPatch = pubspecPatch; }
+
+    public MainDartPatch getMainDartPatch() { return mainDartPatch; }
+    public void setMainDartPatch(MainDartPatch mainDartPatch) { this.mainDartPatch = mainDartPatch; }
 }
@@ -1,13 +1,20 @@
 package com.flutomapp.app.kafka;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flutomapp.app.config.KafkaTopicConfig;
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiTaskClass;
 import com.flutomapp.app.model.ProjectEntity;
 import com.flutomapp.app.repository.ProjectRepository;
+import com.flutomapp.app.service.BlobStore;
 import com.flutomapp.app.service.ProjectCreationService;
+import com.flutomapp.app.service.ProjectPipelineJoinService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -18,160 +25,256 @@ public class ProjectPipelineConsumer {
     private final ProjectCreationService projectCreationService;
     private final KafkaProducerService kafkaProducerService;
     private final ProjectRepository projectRepository;
-    private final ObjectMapper objectMapper;
+    private final PipelineEventCodecs eventCodecs;
+    private final ProjectPipelineJoinService pipelineJoinService;
+    private final BlobStore blobStore;
 
     public ProjectPipelineConsumer(ProjectCreationService projectCreationService,
                                    KafkaProducerService kafkaProducerService,
                                    ProjectRepository projectRepository,
-                                   ObjectMapper objectMapper) {
+                                   PipelineEventCodecs eventCodecs,
+                                   ProjectPipelineJoinService pipelineJoinService,
+                                   BlobStore blobStore) {
         this.projectCreationService = projectCreationService;
         this.kafkaProducerService = kafkaProducerService;
         this.projectRepository = projectRepository;
-        this.objectMapper = objectMapper;
+        this.eventCodecs = eventCodecs;
+        this.pipelineJoinService = pipelineJoinService;
+        this.blobStore = blobStore;
     }
 
-    // ─── STEP 1: ENV CONFIG ───
-    @KafkaListener(topics = KafkaTopicConfig.TOPIC_ENV_CONFIG, groupId = "flutomapp-group")
-    public void handleEnvConfig(String message) {
-        try {
-            ProjectCreationEventSample event = objectMapper.readValue(message, ProjectCreationEventSample.class);
-            updateProjectStatus(event.getUniqueId(), "CONFIGURING_ENV");
-
-            Path flutterProjectDir = resolveProjectDir(event);
-
-            if (event.getEnvKeys() != null && !event.getEnvKeys().isEmpty()) {
-                try {
-                    Map<String, String> envMap = buildEnvMap(event.getEnvKeys(), event.getEnvValues());
-                    if (envMap != null && !envMap.isEmpty()) {
-                        projectCreationService.configureDotEnv(envMap, flutterProjectDir);
-                        event.setEnvConfigured(true);
-                    }
-                } catch (Exception e) {
-                    System.err.println("[KAFKA] ENV config failed for " + event.getUniqueId() + ": " + e.getMessage());
-                }
-            }
+    // Each listener runs one consumer per partition by default (pipeline.concurrency.<stage>), so a slow
+    // project only holds up the projects on its own partition.
+    // Listener ids are the topic names, for PipelineBackpressure to pause and resume them.
+    // Handlers let failures propagate: KafkaRetryConfig sends the record through the delayed retry
+    // topics and then to the dead-letter handler below. Each stage first checks whether it already
+    // ran, so retries and redeliveries never repeat finished work (or its Gemini calls).
 
-            kafkaProducerService.send(KafkaTopicConfig.TOPIC_PERMISSIONS_CONFIG, event);
-        } catch (Exception e) {
-            System.err.println("[KAFKA] Error in ENV step: " + e.getMessage());
+    // ─── STEP 0: CREATE (pooled template or flutter create), then fan out ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_CREATE, topics = KafkaTopicConfig.TOPIC_CREATE, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.create:${pipeline.topic-partitions:3}}")
+    public void handleCreate(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        // Recorded here rather than by the request, which stays at one Mongo write
+        pipelineJoinService.start(event);
+        if (!alreadyDone(event, PipelineStage.CREATE)) {
+            updateProjectStatus(event.getUniqueId(), "CREATING");
+            projectCreationService.createProjectFiles(event);
+        }
+
+        // The configuration stages touch disjoint files and run in parallel; the last one dispatches finalize.
+        // Sent again on redelivery, in case the first attempt stopped part way; done stages skip them.
+        List<PipelineStage> stages = configStagesFor(event);
+        pipelineJoinService.open(event.getUniqueId(), stages);
+        if (stages.isEmpty()) {
+            kafkaProducerService.send(KafkaTopicConfig.TOPIC_FINALIZE, event);
+            return;
+        }
+        updateProjectStatus(event.getUniqueId(), "CONFIGURING");
+        for (PipelineStage stage : stages) {
+            kafkaProducerService.send(stage.getTopic(), event);
         }
     }
 
-    // ─── STEP 2: ANDROID PERMISSIONS ───
-    @KafkaListener(topics = KafkaTopicConfig.TOPIC_PERMISSIONS_CONFIG, groupId = "flutomapp-group")
-    public void handlePermissionsConfig(String message) {
-        try {
-            ProjectCreationEventSample event = objectMapper.readValue(message, ProjectCreationEventSample.class);
-            updateProjectStatus(event.getUniqueId(), "CONFIGURING_PERMISSIONS");
-
-            Path flutterProjectDir = resolveProjectDir(event);
-
-            if (event.getAndroidPermissions() != null && !event.getAndroidPermissions().isEmpty()) {
-                try {
-                    projectCreationService.configureAndroidPermissions(event.getAndroidPermissions(), flutterProjectDir);
-                    event.setPermissionsConfigured(true);
-                } catch (Exception e) {
-                    System.err.println("[KAFKA] Permissions config failed for " + event.getUniqueId() + ": " + e.getMessage());
-                }
-            }
+    // ─── STEP 1 (parallel): ENV CONFIG ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_ENV_CONFIG, topics = KafkaTopicConfig.TOPIC_ENV_CONFIG, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.env:${pipeline.topic-partitions:3}}")
+    public void handleEnvConfig(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        if (alreadyCompleted(event, PipelineStage.ENV)) {
+            return;
+        }
 
-            kafkaProducerService.send(KafkaTopicConfig.TOPIC_APPICON_CONFIG, event);
-        } catch (Exception e) {
-            System.err.println("[KAFKA] Error in PERMISSIONS step: " + e.getMessage());
+        boolean configured = false;
+        Map<String, String> envMap = buildEnvMap(event.getEnvKeys(), event.getEnvValues());
+        if (envMap != null && !envMap.isEmpty()) {
+            projectCreationService.configureDotEnv(envMap, resolveProjectDir(event), event.getPubspecPatch(),
+                    event.getMainDartPatch());
+            configured = true;
         }
+
+        completeStage(event, PipelineStage.ENV, configured);
     }
 
-    // ─── STEP 3: APP ICON ───
-    @KafkaListener(topics = KafkaTopicConfig.TOPIC_APPICON_CONFIG, groupId = "flutomapp-group")
-    public void handleAppIconConfig(String message) {
-        try {
-            ProjectCreationEventSample event = objectMapper.readValue(message, ProjectCreationEventSample.class);
-            updateProjectStatus(event.getUniqueId(), "CONFIGURING_APP_ICON");
-
-            Path flutterProjectDir = resolveProjectDir(event);
-
-            if (event.getAppIconBase64() != null && !event.getAppIconBase64().isEmpty()) {
-                try {
-                    projectCreationService.configureAppIconFromBase64(
-                            event.getAppIconBase64(),
-                            event.getAppIconOriginalFilename(),
-                            flutterProjectDir
-                    );
-                    event.setAppIconConfigured(true);
-                } catch (Exception e) {
-                    System.err.println("[KAFKA] App icon config failed for " + event.getUniqueId() + ": " + e.getMessage());
-                }
-            }
+    // ─── STEP 1 (parallel): ANDROID PERMISSIONS ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_PERMISSIONS_CONFIG, topics = KafkaTopicConfig.TOPIC_PERMISSIONS_CONFIG, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.permissions:${pipeline.topic-partitions:3}}")
+    public void handlePermissionsConfig(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        if (alreadyCompleted(event, PipelineStage.PERMISSIONS)) {
+            return;
+        }
 
-            kafkaProducerService.send(KafkaTopicConfig.TOPIC_FIREBASE_CONFIG, event);
-        } catch (Exception e) {
-            System.err.println("[KAFKA] Error in APP_ICON step: " + e.getMessage());
+        projectCreationService.configureAndroidPermissions(event.getAndroidPermissions(), resolveProjectDir(event),
+                event.getPubspecPatch(), callContext("pipeline.permissions", event));
+
+        completeStage(event, PipelineStage.PERMISSIONS, true);
+    }
+
+    // ─── STEP 1 (parallel): APP ICON ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_APPICON_CONFIG, topics = KafkaTopicConfig.TOPIC_APPICON_CONFIG, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.app-icon:${pipeline.topic-partitions:3}}")
+    public void handleAppIconConfig(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        if (alreadyCompleted(event, PipelineStage.APP_ICON)) {
+            return;
         }
+
+        // Icons are rendered straight into the project; nothing for finalize to apply
+        projectCreationService.configureAppIconFromBlob(event.getAppIcon(), resolveProjectDir(event));
+
+        completeStage(event, PipelineStage.APP_ICON, true);
     }
 
-    // ─── STEP 4: FIREBASE ───
-    @KafkaListener(topics = KafkaTopicConfig.TOPIC_FIREBASE_CONFIG, groupId = "flutomapp-group")
-    public void handleFirebaseConfig(String message) {
-        try {
-            ProjectCreationEventSample event = objectMapper.readValue(message, ProjectCreationEventSample.class);
-            updateProjectStatus(event.getUniqueId(), "CONFIGURING_FIREBASE");
-
-            Path flutterProjectDir = resolveProjectDir(event);
-
-            if (event.isRequireFirebase() && event.getGoogleServicesJsonBase64() != null
-                    && !event.getGoogleServicesJsonBase64().isEmpty()) {
-                try {
-                    byte[] googleServicesBytes = Base64.getDecoder().decode(event.getGoogleServicesJsonBase64());
-                    if (projectCreationService.checkProjectPackageMatchesGoogleServicesBytes(googleServicesBytes, flutterProjectDir)) {
-                        projectCreationService.configureFirebaseFromBytes(googleServicesBytes, flutterProjectDir);
-                        event.setFirebaseConfigured(true);
-                    } else {
-                        System.err.println("[KAFKA] Firebase skipped: package name mismatch for " + event.getUniqueId());
-                    }
-                } catch (Exception e) {
-                    System.err.println("[KAFKA] Firebase config failed for " + event.getUniqueId() + ": " + e.getMessage());
-                }
-            }
+    // ─── STEP 1 (parallel): FIREBASE ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_FIREBASE_CONFIG, topics = KafkaTopicConfig.TOPIC_FIREBASE_CONFIG, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.firebase:${pipeline.topic-partitions:3}}")
+    public void handleFirebaseConfig(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        if (alreadyCompleted(event, PipelineStage.FIREBASE)) {
+            return;
+        }
+        Path flutterProjectDir = resolveProjectDir(event);
 
-            kafkaProducerService.send(KafkaTopicConfig.TOPIC_FINALIZE, event);
-        } catch (Exception e) {
-            System.err.println("[KAFKA] Error in FIREBASE step: " + e.getMessage());
+        boolean configured = false;
+        // Read lazily, only in the stage that needs it
+        byte[] googleServicesBytes = blobStore.read(event.getGoogleServicesJson());
+        if (projectCreationService.checkProjectPackageMatchesGoogleServicesBytes(googleServicesBytes, flutterProjectDir)) {
+            projectCreationService.configureFirebaseFromBytes(googleServicesBytes, flutterProjectDir,
+                    event.getPubspecPatch(), event.getMainDartPatch(), callContext("pipeline.firebase", event));
+            configured = true;
+        } else {
+            System.err.println("[KAFKA] Firebase skipped: package name mismatch for " + event.getUniqueId());
         }
+
+        completeStage(event, PipelineStage.FIREBASE, configured);
     }
 
-    // ─── STEP 5: FINALIZE (zip + update DB) ───
-    @KafkaListener(topics = KafkaTopicConfig.TOPIC_FINALIZE, groupId = "flutomapp-group")
-    public void handleFinalize(String message) {
-        try {
-            ProjectCreationEventSample event = objectMapper.readValue(message, ProjectCreationEventSample.class);
-            updateProjectStatus(event.getUniqueId(), "FINALIZING");
+    // ─── STEP 2: FINALIZE (pubspec + main.dart, pub get, package, update DB) ───
+    @KafkaListener(id = KafkaTopicConfig.TOPIC_FINALIZE, topics = KafkaTopicConfig.TOPIC_FINALIZE, groupId = "flutomapp-group",
+            concurrency = "${pipeline.concurrency.finalize:${pipeline.topic-partitions:3}}")
+    public void handleFinalize(ConsumerRecord<String, byte[]> message) throws Exception {
+        ProjectCreationEventSample event = eventCodecs.decode(message);
+        if (alreadyDone(event, PipelineStage.FINALIZE)) {
+            return;
+        }
+        updateProjectStatus(event.getUniqueId(), "FINALIZING");
 
-            Path projectRootPath = Paths.get(projectCreationService.baseProjectsDir, event.getUniqueId());
-            Path zipPath = Paths.get(projectCreationService.baseProjectsDir, event.getUniqueId() + ".zip");
+        // Stages only record their pubspec.yaml and main.dart changes; the files are edited once here
+        projectCreationService.applyPatches(event.getPubspecPatch(), event.getMainDartPatch(), resolveProjectDir(event),
+                callContext("pipeline.finalize", event));
+        Path downloadPath = projectCreationService.packageProject(event.getUniqueId());
 
-            projectCreationService.zipFolder(projectRootPath, zipPath);
+        Optional<ProjectEntity> optProject = projectRepository.findById(event.getUniqueId());
+        if (optProject.isPresent()) {
+            ProjectEntity project = optProject.get();
+            project.setStatus("COMPLETED");
+            project.setFirebaseConfigured(event.isFirebaseConfigured());
+            project.setLastBuildLocation(downloadPath.toString());
+            projectRepository.save(project);
+        }
+        pipelineJoinService.markFinalized(event.getUniqueId());
 
-            Optional<ProjectEntity> optProject = projectRepository.findById(event.getUniqueId());
-            if (optProject.isPresent()) {
-                ProjectEntity project = optProject.get();
-                project.setStatus("COMPLETED");
-                project.setFirebaseConfigured(event.isFirebaseConfigured());
-                project.setLastBuildLocation(zipPath.toString());
-                projectRepository.save(project);
-            }
+        System.out.println("[KAFKA] Project " + event.getUniqueId() + " COMPLETED successfully.");
+    }
 
-            System.out.println("[KAFKA] Project " + event.getUniqueId() + " COMPLETED successfully.");
+    // ─── DEAD LETTERS: retries exhausted, or a failure retrying cannot fix ───
+    // A configuration stage is recorded as not configured, so the project still finalizes without it
+    // (as when a stage has nothing to do); create and finalize failures fail the project.
+    // POST /project/replay/{id}?from=STAGE resumes it once the cause is fixed.
+    public void handleDeadLetter(ConsumerRecord<String, byte[]> message) {
+        String originalTopic = header(message, KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        System.err.println("[KAFKA] " + originalTopic + " gave up on project " + message.key() + ": "
+                + header(message, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+
+        ProjectCreationEventSample event;
+        try {
+            event = eventCodecs.decode(message);
         } catch (Exception e) {
-            System.err.println("[KAFKA] Error in FINALIZE step: " + e.getMessage());
-            updateProjectStatus(e.getMessage(), "FAILED");
+            System.err.println("[KAFKA] Undecodable dead letter for project " + message.key() + ": " + e.getMessage());
+            if (message.key() != null) {
+                updateProjectStatus(message.key(), "FAILED");
+                pipelineJoinService.release(message.key());
+            }
+            return;
+        }
+        Optional<PipelineStage> stage = PipelineStage.forTopic(originalTopic);
+        if (stage.isPresent() && PipelineStage.CONFIG_STAGES.contains(stage.get())) {
+            completeStage(event, stage.get(), false);
+        } else {
+            updateProjectStatus(event.getUniqueId(), "FAILED");
+            pipelineJoinService.release(event.getUniqueId());
+        }
+    }
+
+    // Only stages with something to do are fanned out to
+    private List<PipelineStage> configStagesFor(ProjectCreationEventSample event) {
+        List<PipelineStage> stages = new ArrayList<>();
+        if (event.getEnvKeys() != null && !event.getEnvKeys().isEmpty()) {
+            stages.add(PipelineStage.ENV);
+        }
+        if (event.getAndroidPermissions() != null && !event.getAndroidPermissions().isEmpty()) {
+            stages.add(PipelineStage.PERMISSIONS);
+        }
+        if (event.getAppIcon() != null) {
+            stages.add(PipelineStage.APP_ICON);
+        }
+        if (event.isRequireFirebase() && event.getGoogleServicesJson() != null) {
+            stages.add(PipelineStage.FIREBASE);
         }
+        return stages;
     }
 
+    // Records the stage at the join; the stage that completes it sends the merged event to finalize.
+    // If that send fails the claim is given back and the stage fails, so its retry dispatches again.
+    private void completeStage(ProjectCreationEventSample event, PipelineStage stage, boolean configured) {
+        Optional<ProjectCreationEventSample> merged = pipelineJoinService.complete(event, stage, configured);
+        if (merged.isEmpty()) {
+            return;
+        }
+        try {
+            kafkaProducerService.send(KafkaTopicConfig.TOPIC_FINALIZE, merged.get());
+        } catch (RuntimeException e) {
+            pipelineJoinService.unclaimFinalize(event.getUniqueId());
+            throw e;
+        }
+    }
+
+    // A configuration stage whose result is already recorded is not run again, but still offers the join
+    // its completion: the attempt that recorded it may have failed to send finalize. The first result
+    // recorded wins, so configured=false here changes nothing.
+    private boolean alreadyCompleted(ProjectCreationEventSample event, PipelineStage stage) {
+        if (!alreadyDone(event, stage)) {
+            return false;
+        }
+        completeStage(event, stage, false);
+        return true;
+    }
+
+    private boolean alreadyDone(ProjectCreationEventSample event, PipelineStage stage) {
+        if (pipelineJoinService.isDone(event.getUniqueId(), stage)) {
+            System.out.println("[KAFKA] " + stage + " already done for " + event.getUniqueId() + ", skipping redelivery");
+            return true;
+        }
+        return false;
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
 
     private Path resolveProjectDir(ProjectCreationEventSample event) {
         return Paths.get(projectCreationService.baseProjectsDir, event.getUniqueId(), event.getProjectName());
     }
 
+    // Stage calls are config-file edits, tagged for usage accounting on the project and organisation
+    private GeminiCallContext callContext(String caller, ProjectCreationEventSample event) {
+        return GeminiCallContext.background(caller)
+                .withTask(GeminiTaskClass.CONFIG_EDIT)
+                .forProject(event.getUniqueId(), event.getOrganisationId());
+    }
+
     private void updateProjectStatus(String projectId, String status) {
         projectRepository.findById(projectId).ifPresent(project -> {
             project.setStatus(status);
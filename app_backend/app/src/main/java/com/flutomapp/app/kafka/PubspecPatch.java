@@ -0,0 +1,60 @@
+package com.flutomapp.app.kafka;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * pubspec.yaml changes collected by the pipeline stages and carried on the
+ * event, so the file is edited once in the finalize stage instead of by every
+ * stage in turn. Entries are additive and keyed, so stage order doesn't matter.
+ */
+public class PubspecPatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, String> dependencies = new LinkedHashMap<>();
+    private Map<String, String> devDependencies = new LinkedHashMap<>();
+    private List<String> assets = new ArrayList<>();
+
+    public PubspecPatch() {
+    }
+
+    public void addDependency(String name, String constraint) {
+        dependencies.put(name, constraint);
+    }
+
+    public void addDevDependency(String name, String constraint) {
+        devDependencies.put(name, constraint);
+    }
+
+    public void addAsset(String asset) {
+        if (!assets.contains(asset)) {
+            assets.add(asset);
+        }
+    }
+
+    public void merge(PubspecPatch other) {
+        if (other == null) {
+            return;
+        }
+        dependencies.putAll(other.getDependencies());
+        devDependencies.putAll(other.getDevDependencies());
+        other.getAssets().forEach(this::addAsset);
+    }
+
+    public boolean hasChanges() {
+        return !dependencies.isEmpty() || !devDependencies.isEmpty() || !assets.isEmpty();
+    }
+
+    public Map<String, String> getDependencies() { return dependencies; }
+    public void setDependencies(Map<String, String> dependencies) { this.dependencies = dependencies; }
+
+    public Map<String, String> getDevDependencies() { return devDependencies; }
+    public void setDevDependencies(Map<String, String> devDependencies) { this.devDependencies = devDependencies; }
+
+    public List<String> getAssets() { return assets; }
+    public void setAssets(List<String> assets) { this.assets = assets; }
+}
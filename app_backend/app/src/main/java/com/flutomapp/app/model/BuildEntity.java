@@ -1,5 +1,7 @@
 package com.flutomapp.app.model;
 
+import com.flutomapp.app.httpmodels.BuildModels.BuildMode;
+import com.flutomapp.app.httpmodels.BuildModels.BuildOutputMode;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,7 +11,9 @@ import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @AllArgsConstructor
@@ -47,6 +51,13 @@ public class BuildEntity {
 
     private String apkLocation;
 
+    private BuildOutputMode outputMode = BuildOutputMode.FAT_APK;
+
+    private BuildMode buildMode = BuildMode.RELEASE;
+
+    // artifact key (ABI name, "universal" or "bundle") -> stored file path
+    private Map<String, String> artifacts = new HashMap<>();
+
     private String buildVersion;
 
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -55,6 +66,9 @@ public class BuildEntity {
 
     private Long buildDurationMs;
 
+    // Gemini usage, incremented in place by LlmUsageService
+    private LlmUsage llmUsage = new LlmUsage();
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
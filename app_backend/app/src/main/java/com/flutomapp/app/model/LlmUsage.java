@@ -0,0 +1,22 @@
+package com.flutomapp.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregated Gemini usage, embedded in builds, projects and the daily
+ * organisation rollups. Only ever changed with $inc (see LlmUsageService).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LlmUsage {
+    private long calls;
+    private long failedCalls;
+    private long retries;
+    private long promptTokens;
+    private long outputTokens;
+    private long cachedTokens;
+    private long latencyMs;
+}
@@ -0,0 +1,33 @@
+package com.flutomapp.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "llm_usage_daily")
+@CompoundIndex(name = "org_date", def = "{'organisationId': 1, 'date': 1}")
+public class LlmUsageDailyEntity {
+
+    // organisationId + ":" + date
+    @Id
+    private String id;
+
+    private String organisationId;
+
+    private LocalDate date;
+
+    private LlmUsage usage = new LlmUsage();
+
+    // caller label (dots replaced by '_', e.g. "build_screen") -> usage, to find the hottest paths
+    private Map<String, LlmUsage> byCaller = new HashMap<>();
+}
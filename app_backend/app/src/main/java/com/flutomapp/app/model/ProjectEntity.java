@@ -38,4 +38,7 @@ public class ProjectEntity {
 
     private List<Screen> listOfScreens = new ArrayList<>();
 
+    // Gemini usage, incremented in place by LlmUsageService
+    private LlmUsage llmUsage = new LlmUsage();
+
 }
@@ -0,0 +1,69 @@
+package com.flutomapp.app.model;
+
+import com.flutomapp.app.kafka.MainDartPatch;
+import com.flutomapp.app.kafka.ProjectCreationEventSample;
+import com.flutomapp.app.kafka.PubspecPatch;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pipeline state of one project, keyed by the project id: the event it was
+ * started with (for replays), which stages are done (so redelivered messages
+ * skip them), and the join of the parallel stages. Each stage sets its own
+ * entry of completedStages, so stages never overwrite each other's results.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "project_pipeline_states")
+public class ProjectPipelineState {
+
+    @Id
+    private String id;
+
+    // As sent to the create stage
+    private ProjectCreationEventSample event;
+
+    // Set when the create stage has made the project files and fanned out
+    private LocalDateTime filesCreatedAt;
+
+    // PipelineStage names the join waits for
+    private List<String> expectedStages = new ArrayList<>();
+
+    // PipelineStage name -> what the stage did
+    private Map<String, StageResult> completedStages = new HashMap<>();
+
+    // Set once by whichever stage dispatches finalize
+    private boolean finalizeDispatched;
+
+    private LocalDateTime finalizedAt;
+
+    // Node whose create stage took the project in, and when; counted against that node's
+    // pipeline.backpressure.max-in-flight-projects until releasedAt (finalized or dead-lettered)
+    private String admittedBy;
+
+    private LocalDateTime admittedAt;
+
+    private LocalDateTime releasedAt;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class StageResult {
+        private boolean configured;
+        private PubspecPatch pubspecPatch;
+        private MainDartPatch mainDartPatch;
+        private LocalDateTime completedAt;
+    }
+}
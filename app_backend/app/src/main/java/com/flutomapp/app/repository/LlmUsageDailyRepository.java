@@ -0,0 +1,15 @@
+package com.flutomapp.app.repository;
+
+import com.flutomapp.app.model.LlmUsageDailyEntity;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface LlmUsageDailyRepository extends MongoRepository<LlmUsageDailyEntity, String> {
+
+    // Between is exclusive on both ends
+    List<LlmUsageDailyEntity> findByOrganisationIdAndDateBetweenOrderByDateAsc(String organisationId, LocalDate after, LocalDate before);
+}
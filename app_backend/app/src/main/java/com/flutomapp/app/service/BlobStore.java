@@ -0,0 +1,159 @@
+package com.flutomapp.app.service;
+
+import com.flutomapp.app.kafka.BlobRef;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local content-addressed store for uploads the pipeline needs later (app icon,
+ * google-services.json). Events carry a {@link BlobRef} instead of the bytes, and
+ * only the stage that uses a blob reads it.
+ *
+ * Blobs live at dir/ab/abcdef... by SHA-256. Writes stream to a temp file while
+ * hashing and are then renamed into place, so a blob is either complete or
+ * absent, and identical uploads are stored once. Blobs not written or re-put
+ * within the TTL are swept; the TTL must outlast the pipeline including retries.
+ */
+@Component
+public class BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    private final Duration ttl;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "blob-store-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BlobStore(@Value("${projects.base.dir:projects}") String baseProjectsDir,
+                     @Value("${projects.blob-store.ttl-hours:24}") long ttlHours) {
+        this.dir = Paths.get(baseProjectsDir, ".blobs");
+        this.ttl = Duration.ofHours(ttlHours);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Streams content into the store and returns its reference. The stream is
+     * read to the end but not closed.
+     */
+    public BlobRef put(InputStream content) throws IOException {
+        Path temp = Files.createTempFile(dir, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                size = content.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = path(hash);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Already stored; the rename may also just replace it on some platforms, which is as good
+            }
+            if (Files.exists(target)) {
+                // Restart the TTL for a re-put blob
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            }
+            return new BlobRef(hash, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public InputStream open(BlobRef ref) throws IOException {
+        Path blob = path(ref.getSha256());
+        if (!Files.exists(blob)) {
+            throw new FileNotFoundException("Blob " + ref.getSha256() + " not found (expired?)");
+        }
+        return Files.newInputStream(blob);
+    }
+
+    public byte[] read(BlobRef ref) throws IOException {
+        try (InputStream in = open(ref)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private Path path(String hash) {
+        // The hash comes from events; never let it address anything outside the store
+        if (hash == null || !SHA256.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Not a SHA-256 blob reference: " + hash);
+        }
+        return dir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private void sweep() {
+        Instant cutoff = Instant.now().minus(ttl);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            logger.warn("Blob sweep failed: {}", e.getMessage());
+            return;
+        }
+        int deleted = 0;
+        for (Path file : files) {
+            try {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            } catch (IOException e) {
+                logger.warn("Could not sweep blob {}: {}", file, e.getMessage());
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Swept {} expired blobs", deleted);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
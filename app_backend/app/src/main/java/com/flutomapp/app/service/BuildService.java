@@ -1,6 +1,12 @@
 package com.flutomapp.app.service;
 
 import com.flutomapp.app.dtomodel.Screen;
+import com.flutomapp.app.gemini.GeminiCachedContent;
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiTaskClass;
+import com.flutomapp.app.gemini.StreamingCodeFenceStripper;
+import com.flutomapp.app.httpmodels.BuildModels.BuildMode;
+import com.flutomapp.app.httpmodels.BuildModels.BuildOutputMode;
 import com.flutomapp.app.httpmodels.BuildModels.BuildRequest;
 import com.flutomapp.app.httpmodels.BuildModels.BuildStatus;
 import com.flutomapp.app.model.BuildEntity;
@@ -11,25 +17,26 @@ import com.flutomapp.app.repository.BuildRepository;
 import com.flutomapp.app.repository.ProjectRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 @Service
 public class BuildService{
@@ -38,8 +45,13 @@ public class BuildService{
     private final GeminiAIService geminiAIService;
     private final ProjectRepository projectRepository;
     private final BuildRepository buildRepository;
+    private final FlutterProcessRunner flutter;
     private static final String BASE_PROJECTS_FOLDER = "projects";
     private static final String FINAL_BUILDS_FOLDER = "builds";
+    private static final List<String> SPLIT_ABIS = List.of("armeabi-v7a", "arm64-v8a", "x86_64");
+    private static final String DEFAULT_ABI = "arm64-v8a";
+    private static final String UNIVERSAL_ARTIFACT = "universal";
+    private static final String BUNDLE_ARTIFACT = "bundle";
     private final ConcurrentHashMap<String, BuildStatus> buildStatusMap = new ConcurrentHashMap<>();
 
     // Context window management
@@ -48,10 +60,20 @@ public class BuildService{
 
     private final ExecutorService buildExecutor = Executors.newFixedThreadPool(5);
 
-    public BuildService(GeminiAIService geminiAIService, ProjectRepository projectRepository, BuildRepository buildRepository) {
+    // Stream screen code to disk and the build log as tokens arrive instead of waiting for the full response
+    @Value("${build.streaming-generation:true}")
+    private boolean streamingGeneration;
+
+    // Lifetime of the cached project preamble; deleted explicitly once code generation finishes
+    @Value("${gemini.cache.build-ttl-seconds:900}")
+    private long buildCacheTtlSeconds;
+
+    public BuildService(GeminiAIService geminiAIService, ProjectRepository projectRepository, BuildRepository buildRepository,
+                        FlutterProcessRunner flutter) {
         this.geminiAIService = geminiAIService;
         this.projectRepository = projectRepository;
         this.buildRepository = buildRepository;
+        this.flutter = flutter;
     }
 
     public String startBuildProcess(String projectId, BuildRequest buildRequest, UserEntity user) {
@@ -70,6 +92,8 @@ public class BuildService{
         buildEntity.setCreatedBy(user);
         buildEntity.setInstructions(buildRequest.getInstructions());
         buildEntity.setInitialScreenIndex(buildRequest.getInitialScreenIndex());
+        buildEntity.setOutputMode(resolveOutputMode(buildRequest));
+        buildEntity.setBuildMode(resolveBuildMode(buildRequest));
         buildEntity.setStatusMessage("Build initiated. Queued for processing...");
         buildEntity.setCompleted(false);
         buildEntity.setCreatedAt(LocalDateTime.now());
@@ -112,58 +136,80 @@ public class BuildService{
             // Initialize build context
             BuildContext buildContext = new BuildContext();
             buildContext.initialize(project.getProjectName(), request.getInstructions(), screens.size());
+            buildContext.tagUsage(buildId, projectId, project.getOrganisation() != null ? project.getOrganisation().getId() : null);
+            // Every screen and main.dart request starts with the same preamble: cache it once if large enough
+            buildContext.cachedPreamble = geminiAIService.createCachedContent(buildContext.getPreamble(),
+                    Duration.ofSeconds(buildCacheTtlSeconds), buildContext.callContext("build.cache", GeminiTaskClass.SCREEN));
+            if (buildContext.cachedPreamble != null) {
+                status.getLogs().add("Project preamble cached (" + buildContext.cachedPreamble.getTokenCount() + " tokens).");
+            }
 
-            // Generate screens sequentially with smart context management
-            for (int i = 0; i < screens.size(); i++) {
-                Screen screen = screens.get(i);
-                status.getLogs().add(String.format("Generating screen %d/%d: %s", i + 1, screens.size(), screen.getScreenName()));
-                updateBuildProgress(buildId, "Generating screen " + (i + 1) + "/" + screens.size(), status.getLogs());
-
-                // Get optimized context for this screen
-                List<Map<String, String>> optimizedContext = buildContext.getOptimizedContextForScreen(i);
-
-                String prompt = createContextualPromptForScreen(screen, i, screens.size());
-                String generatedDartCode = geminiAIService.generateContentWithContext(prompt, optimizedContext);
-                String cleanedDartCode = cleanGeneratedCode(generatedDartCode);
-
-                if (cleanedDartCode.startsWith("Error:")) {
-                    throw new RuntimeException("AI generation failed for screen '" + screen.getScreenName() + "': " + cleanedDartCode);
+            try {
+                // Generate screens sequentially with smart context management
+                for (int i = 0; i < screens.size(); i++) {
+                    Screen screen = screens.get(i);
+                    status.getLogs().add(String.format("Generating screen %d/%d: %s", i + 1, screens.size(), screen.getScreenName()));
+                    updateBuildProgress(buildId, "Generating screen " + (i + 1) + "/" + screens.size(), status.getLogs());
+
+                    // Get optimized context for this screen
+                    List<Map<String, String>> optimizedContext = buildContext.getOptimizedContextForScreen(i);
+
+                    String prompt = createContextualPromptForScreen(screen, i, screens.size());
+                    String dartFileName = toSnakeCase(screen.getScreenName()) + ".dart";
+                    String cleanedDartCode;
+                    if (streamingGeneration) {
+                        cleanedDartCode = streamScreenCode(prompt, optimizedContext, buildContext.callContext("build.screen", GeminiTaskClass.SCREEN),
+                                libDirectory.resolve(dartFileName), status);
+                    } else {
+                        cleanedDartCode = cleanGeneratedCode(geminiAIService.generateContentWithContext(prompt, optimizedContext, buildContext.callContext("build.screen", GeminiTaskClass.SCREEN)));
+                    }
+
+                    if (cleanedDartCode.startsWith("Error:")) {
+                        throw new RuntimeException("AI generation failed for screen '" + screen.getScreenName() + "': " + cleanedDartCode);
+                    }
+
+                    screen.setScreenCode(cleanedDartCode);
+                    if (!streamingGeneration) {
+                        Files.write(libDirectory.resolve(dartFileName), cleanedDartCode.getBytes(StandardCharsets.UTF_8));
+                    }
+                    status.getLogs().add("Successfully generated file: " + dartFileName);
+
+                    // Update build context with this screen
+                    buildContext.addGeneratedScreen(screen, dartFileName, cleanedDartCode);
                 }
 
-                screen.setScreenCode(cleanedDartCode);
-                String dartFileName = toSnakeCase(screen.getScreenName()) + ".dart";
-                Files.write(libDirectory.resolve(dartFileName), cleanedDartCode.getBytes(StandardCharsets.UTF_8));
-                status.getLogs().add("Successfully generated file: " + dartFileName);
-
-                // Update build context with this screen
-                buildContext.addGeneratedScreen(screen, dartFileName, cleanedDartCode);
+                updateBuildProgress(buildId, "Generating main.dart with AI...", status.getLogs());
+                generateMainDartFileWithAI(libDirectory, screens, request.getInitialScreenIndex(), project.getProjectName(), buildContext);
+                status.getLogs().add("Successfully generated main.dart.");
+            } finally {
+                geminiAIService.deleteCachedContent(buildContext.cachedPreamble);
             }
 
-            updateBuildProgress(buildId, "Generating main.dart with AI...", status.getLogs());
-            generateMainDartFileWithAI(libDirectory, screens, request.getInitialScreenIndex(), project.getProjectName(), buildContext);
-            status.getLogs().add("Successfully generated main.dart.");
+            BuildOutputMode outputMode = resolveOutputMode(request);
+            BuildMode buildMode = resolveBuildMode(request);
+            updateBuildProgress(buildId, "Building " + outputMode + " (" + buildMode.suffix() + ") with Flutter command...", status.getLogs());
+            runFlutterBuild(flutterProjectRootPath, outputMode, buildMode, status);
 
-            updateBuildProgress(buildId, "Building APK with Flutter command...", status.getLogs());
-            runFlutterBuild(flutterProjectRootPath, status);
-
-            updateBuildProgress(buildId, "Finalizing build and storing APK...", status.getLogs());
-            status.getLogs().add("Flutter build command completed. Locating APK...");
-            Path generatedApkPath = findGeneratedApk(flutterProjectRootPath);
-            Path finalApkPath = storeApk(generatedApkPath, buildId);
-            status.getLogs().add("APK successfully stored at: " + finalApkPath);
+            updateBuildProgress(buildId, "Finalizing build and storing artifacts...", status.getLogs());
+            status.getLogs().add("Flutter build command completed. Locating artifacts...");
+            Map<String, Path> generatedArtifacts = findGeneratedArtifacts(flutterProjectRootPath, outputMode, buildMode);
+            Map<String, String> storedArtifacts = storeArtifacts(generatedArtifacts, buildId);
+            storedArtifacts.forEach((key, location) -> status.getLogs().add("Artifact '" + key + "' stored at: " + location));
+            String primaryLocation = primaryArtifactLocation(storedArtifacts);
 
             // Calculate build version
             String buildVersion = "v1.0." + System.currentTimeMillis();
 
             // Mark build as completed successfully
-            completeBuild(buildId, true, null, finalApkPath.toString(), buildVersion);
+            completeBuild(buildId, true, null, primaryLocation, storedArtifacts, buildVersion);
 
-            // Update project entity
-            project.setListOfScreens(screens);
-            project.setLastBuildAt(LocalDateTime.now());
-            project.setLastBuildVersion(buildVersion);
-            project.setLastBuildLocation(finalApkPath.toString());
-            projectRepository.save(project);
+            // Update project entity; re-read first so usage counters incremented during the build survive the save
+            ProjectEntity latest = projectRepository.findById(projectId).orElse(project);
+            latest.setListOfScreens(screens);
+            latest.setLastBuildAt(LocalDateTime.now());
+            latest.setLastBuildVersion(buildVersion);
+            latest.setLastBuildLocation(primaryLocation);
+            projectRepository.save(latest);
 
         } catch (Exception e) {
             status.setStatusMessage("Build failed.");
@@ -174,7 +220,7 @@ public class BuildService{
             log.error("Build failed for buildId: {}", buildId, e);
 
             // Update BuildEntity with failure
-            completeBuild(buildId, false, e.getMessage(), null, null);
+            completeBuild(buildId, false, e.getMessage(), null, Map.of(), null);
         }
     }
 
@@ -187,6 +233,11 @@ public class BuildService{
         private String projectName;
         private String generalInstructions;
         private int totalScreens;
+        // Server-side cache of the preamble (first two history messages), or null
+        private GeminiCachedContent cachedPreamble;
+        private String buildId;
+        private String projectId;
+        private String organisationId;
 
         public void initialize(String projectName, String instructions, int totalScreens) {
             this.projectName = projectName;
@@ -204,6 +255,22 @@ public class BuildService{
                             projectName + "' and following your instructions.");
         }
 
+        public List<Map<String, String>> getPreamble() {
+            return List.copyOf(conversationHistory);
+        }
+
+        public void tagUsage(String buildId, String projectId, String organisationId) {
+            this.buildId = buildId;
+            this.projectId = projectId;
+            this.organisationId = organisationId;
+        }
+
+        public GeminiCallContext callContext(String caller, GeminiTaskClass taskClass) {
+            return GeminiCallContext.interactive(caller, cachedPreamble)
+                    .withTask(taskClass)
+                    .forBuild(buildId, projectId, organisationId);
+        }
+
         public void addGeneratedScreen(Screen screen, String fileName, String code) {
             ScreenSummary summary = new ScreenSummary(
                     screen.getScreenName(),
@@ -387,7 +454,7 @@ public class BuildService{
         return prompt.toString();
     }
 
-    private String cleanGeneratedCode(String rawCode) {
+    static String cleanGeneratedCode(String rawCode) {
         if (rawCode == null || rawCode.trim().isEmpty()) {
             return "";
         }
@@ -407,31 +474,70 @@ public class BuildService{
         return cleaned;
     }
 
-    private void runFlutterBuild(String projectPath, BuildStatus status) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        String flutterExecutablePath = "C:\\Users\\zhyde\\OneDrive\\Desktop\\Zeeshan\\fluttersdk\\flutter_windows_3.29.3-stable\\flutter\\bin\\flutter.bat";
-        processBuilder.command(flutterExecutablePath, "build", "apk", "--release");
-        processBuilder.directory(new java.io.File(projectPath));
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                status.getLogs().add(line);
-            }
-        }
+    private BuildOutputMode resolveOutputMode(BuildRequest request) {
+        return request.getOutputMode() != null ? request.getOutputMode() : BuildOutputMode.FAT_APK;
+    }
+
+    private BuildMode resolveBuildMode(BuildRequest request) {
+        return request.getBuildMode() != null ? request.getBuildMode() : BuildMode.RELEASE;
+    }
 
-        boolean finished = process.waitFor(10, TimeUnit.MINUTES);
-        if (!finished) {
-            process.destroy();
-            throw new RuntimeException("Flutter build timed out after 10 minutes.");
+    /**
+     * Streams a screen from Gemini straight into its Dart file, stripping markdown
+     * fences on the fly. A single progress line in the build log is updated as
+     * lines arrive, and time-to-first-token is logged. Returns the cleaned code,
+     * or the "Error: ..." response if generation failed.
+     */
+    private String streamScreenCode(String prompt, List<Map<String, String>> context, GeminiCallContext callContext,
+                                    Path dartFile, BuildStatus status) throws IOException {
+        StreamingCodeFenceStripper stripper = new StreamingCodeFenceStripper();
+        StringBuilder code = new StringBuilder();
+        long started = System.currentTimeMillis();
+        String fileName = dartFile.getFileName().toString();
+        status.getLogs().add("Streaming " + fileName + ": waiting for first tokens...");
+        int progressLine = status.getLogs().size() - 1;
+        int[] linesReceived = {0};
+        boolean[] firstChunk = {true};
+
+        try (BufferedWriter writer = Files.newBufferedWriter(dartFile, StandardCharsets.UTF_8)) {
+            String response = geminiAIService.streamContentWithContext(prompt, context, callContext, chunk -> {
+                if (firstChunk[0]) {
+                    firstChunk[0] = false;
+                    status.getLogs().add("Time to first token for " + fileName + ": " + (System.currentTimeMillis() - started) + " ms");
+                }
+                String ready = stripper.accept(chunk);
+                try {
+                    writer.write(ready);
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                code.append(ready);
+                linesReceived[0] += (int) chunk.chars().filter(c -> c == '\n').count();
+                status.getLogs().set(progressLine, "Streaming " + fileName + ": " + linesReceived[0] + " lines received");
+            });
+            if (response.startsWith("Error:")) {
+                return response;
+            }
+            String rest = stripper.finish();
+            writer.write(rest);
+            code.append(rest);
         }
+        status.getLogs().set(progressLine, "Streamed " + fileName + ": " + linesReceived[0] + " lines in "
+                + (System.currentTimeMillis() - started) + " ms");
+        return code.toString();
+    }
 
-        int exitCode = process.exitValue();
-        if (exitCode != 0) {
-            throw new RuntimeException("Flutter build command failed with exit code " + exitCode);
+    private void runFlutterBuild(String projectPath, BuildOutputMode outputMode, BuildMode buildMode, BuildStatus status) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(List.of("build"));
+        arguments.add(outputMode == BuildOutputMode.APP_BUNDLE ? "appbundle" : "apk");
+        arguments.add(buildMode.flag());
+        if (outputMode == BuildOutputMode.SPLIT_PER_ABI) {
+            arguments.add("--split-per-abi");
         }
+        status.getLogs().add("Running: flutter " + String.join(" ", arguments));
+        // Lines reach the build log as flutter prints them; failures and timeouts throw with the last lines
+        flutter.run(arguments, Paths.get(projectPath), status.getLogs()::add);
     }
 
     private void generateMainDartFileWithAI(Path libDirectory, List<Screen> screens, int initialScreenIndex, String projectName, BuildContext buildContext) throws IOException {
@@ -476,7 +582,7 @@ public class BuildService{
         );
 
         List<Map<String, String>> mainContext = buildContext.getContextForMainDart();
-        String generatedMainDart = geminiAIService.generateContentWithContext(mainDartPrompt, mainContext);
+        String generatedMainDart = geminiAIService.generateContentWithContext(mainDartPrompt, mainContext, buildContext.callContext("build.main-dart", GeminiTaskClass.MAIN_DART));
         String cleanedMainDart = cleanGeneratedCode(generatedMainDart);
 
         if (cleanedMainDart.startsWith("Error:")) {
@@ -493,20 +599,64 @@ public class BuildService{
                 .toLowerCase();
     }
 
-    private Path findGeneratedApk(String projectPath) {
-        Path apkPath = Paths.get(projectPath, "build", "app", "outputs", "flutter-apk", "app-release.apk");
-        if (!Files.exists(apkPath)) {
-            throw new RuntimeException("APK not found at: " + apkPath);
+    private Map<String, Path> findGeneratedArtifacts(String projectPath, BuildOutputMode outputMode, BuildMode buildMode) {
+        Map<String, Path> artifacts = new LinkedHashMap<>();
+        String mode = buildMode.suffix();
+        Path apkDir = Paths.get(projectPath, "build", "app", "outputs", "flutter-apk");
+
+        switch (outputMode) {
+            case SPLIT_PER_ABI -> {
+                for (String abi : SPLIT_ABIS) {
+                    Path apkPath = apkDir.resolve("app-" + abi + "-" + mode + ".apk");
+                    if (Files.exists(apkPath)) {
+                        artifacts.put(abi, apkPath);
+                    }
+                }
+                if (artifacts.isEmpty()) {
+                    throw new RuntimeException("No split APKs found in: " + apkDir);
+                }
+            }
+            case APP_BUNDLE -> {
+                Path aabPath = Paths.get(projectPath, "build", "app", "outputs", "bundle", mode, "app-" + mode + ".aab");
+                if (!Files.exists(aabPath)) {
+                    throw new RuntimeException("App bundle not found at: " + aabPath);
+                }
+                artifacts.put(BUNDLE_ARTIFACT, aabPath);
+            }
+            default -> {
+                Path apkPath = apkDir.resolve("app-" + mode + ".apk");
+                if (!Files.exists(apkPath)) {
+                    throw new RuntimeException("APK not found at: " + apkPath);
+                }
+                artifacts.put(UNIVERSAL_ARTIFACT, apkPath);
+            }
         }
-        return apkPath;
+        return artifacts;
     }
 
-    private Path storeApk(Path sourceApkPath, String buildId) throws IOException {
+    private Map<String, String> storeArtifacts(Map<String, Path> generatedArtifacts, String buildId) throws IOException {
         Path finalBuildsDir = Paths.get(FINAL_BUILDS_FOLDER);
         Files.createDirectories(finalBuildsDir);
-        Path destinationApkPath = finalBuildsDir.resolve(buildId + ".apk");
-        Files.move(sourceApkPath, destinationApkPath, StandardCopyOption.REPLACE_EXISTING);
-        return destinationApkPath;
+        Map<String, String> stored = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> artifact : generatedArtifacts.entrySet()) {
+            String fileName = switch (artifact.getKey()) {
+                case UNIVERSAL_ARTIFACT -> buildId + ".apk";
+                case BUNDLE_ARTIFACT -> buildId + ".aab";
+                default -> buildId + "-" + artifact.getKey() + ".apk";
+            };
+            Path destination = finalBuildsDir.resolve(fileName);
+            Files.move(artifact.getValue(), destination, StandardCopyOption.REPLACE_EXISTING);
+            stored.put(artifact.getKey(), destination.toString());
+        }
+        return stored;
+    }
+
+    // The location recorded as apkLocation / lastBuildLocation for single-file consumers
+    private String primaryArtifactLocation(Map<String, String> artifacts) {
+        if (artifacts.containsKey(UNIVERSAL_ARTIFACT)) return artifacts.get(UNIVERSAL_ARTIFACT);
+        if (artifacts.containsKey(BUNDLE_ARTIFACT)) return artifacts.get(BUNDLE_ARTIFACT);
+        if (artifacts.containsKey(DEFAULT_ABI)) return artifacts.get(DEFAULT_ABI);
+        return artifacts.values().iterator().next();
     }
 
     // Helper method to update both BuildEntity and BuildStatus during build progress
@@ -527,7 +677,8 @@ public class BuildService{
     }
 
     // Helper method to mark build as completed
-    private void completeBuild(String buildId, boolean success, String errorMessage, String apkLocation, String buildVersion) {
+    private void completeBuild(String buildId, boolean success, String errorMessage, String apkLocation,
+                               Map<String, String> artifacts, String buildVersion) {
         // Update BuildEntity
         BuildEntity build = buildRepository.findByBuildId(buildId).orElse(null);
         if (build != null) {
@@ -535,6 +686,7 @@ public class BuildService{
             build.setSuccess(success);
             build.setErrorMessage(errorMessage);
             build.setApkLocation(apkLocation);
+            build.setArtifacts(new HashMap<>(artifacts));
             build.setBuildVersion(buildVersion);
             build.setCompletedAt(LocalDateTime.now());
             build.setBuildDurationMs(
@@ -552,6 +704,7 @@ public class BuildService{
             status.setErrorMessage(errorMessage);
             status.setStatusMessage(success ? "Build completed successfully." : "Build failed.");
             status.setApkFilePath(apkLocation);
+            status.getArtifacts().putAll(artifacts);
         }
     }
 
@@ -559,13 +712,19 @@ public class BuildService{
         return buildStatusMap.get(buildId);
     }
 
-    public Resource getApkResource(String buildId) {
-        BuildStatus status = getBuildStatus(buildId);
-        if (status == null || !status.isSuccess() || status.getApkFilePath() == null) {
-            throw new RuntimeException("Build not found, not successful, or APK path is missing.");
+    /**
+     * Resolves the artifact to serve for a download. Split builds pick the first
+     * ABI from the device's preference list that was built, falling back to
+     * arm64-v8a when the client sends no ABI hint.
+     */
+    public Resource getApkResource(String buildId, List<String> deviceAbis) {
+        Map<String, String> artifacts = resolveArtifacts(buildId);
+        String artifactKey = selectArtifact(artifacts, deviceAbis);
+        if (artifactKey == null) {
+            throw new RuntimeException("No artifact matches device ABIs " + deviceAbis + " for build " + buildId);
         }
         try {
-            Path filePath = Paths.get(status.getApkFilePath());
+            Path filePath = Paths.get(artifacts.get(artifactKey));
             Resource resource = new UrlResource(filePath.toUri());
             if (resource.exists() && resource.isReadable()) {
                 return resource;
@@ -577,6 +736,41 @@ public class BuildService{
         }
     }
 
+    private Map<String, String> resolveArtifacts(String buildId) {
+        BuildStatus status = getBuildStatus(buildId);
+        if (status != null) {
+            if (!status.isSuccess() || status.getArtifacts().isEmpty()) {
+                throw new RuntimeException("Build not found, not successful, or APK path is missing.");
+            }
+            return status.getArtifacts();
+        }
+        // In-memory status is lost on restart; fall back to the persisted build
+        BuildEntity build = buildRepository.findByBuildId(buildId)
+                .orElseThrow(() -> new RuntimeException("Build not found with buildId: " + buildId));
+        if (!build.isSuccess()) {
+            throw new RuntimeException("Build not found, not successful, or APK path is missing.");
+        }
+        if (build.getArtifacts() != null && !build.getArtifacts().isEmpty()) {
+            return build.getArtifacts();
+        }
+        if (build.getApkLocation() != null) {
+            return Map.of(UNIVERSAL_ARTIFACT, build.getApkLocation());
+        }
+        throw new RuntimeException("Build not found, not successful, or APK path is missing.");
+    }
+
+    private String selectArtifact(Map<String, String> artifacts, List<String> deviceAbis) {
+        if (deviceAbis != null) {
+            for (String abi : deviceAbis) {
+                if (artifacts.containsKey(abi)) return abi;
+            }
+        }
+        if (artifacts.containsKey(UNIVERSAL_ARTIFACT)) return UNIVERSAL_ARTIFACT;
+        if (artifacts.containsKey(BUNDLE_ARTIFACT)) return BUNDLE_ARTIFACT;
+        if ((deviceAbis == null || deviceAbis.isEmpty()) && artifacts.containsKey(DEFAULT_ABI)) return DEFAULT_ABI;
+        return null;
+    }
+
     public List<BuildEntity> getBuildsByOrganisationId(String organisationId) {
         return buildRepository.findByOrganisationIdOrderByCreatedAtDesc(organisationId);
     }
@@ -598,14 +792,20 @@ public class BuildService{
         BuildEntity build = buildRepository.findByBuildId(buildId)
                 .orElseThrow(() -> new RuntimeException("Build not found with buildId: " + buildId));
 
-        // Delete APK file if it exists
+        // Delete stored artifacts if they exist
+        Set<String> locations = new HashSet<>();
         if (build.getApkLocation() != null) {
+            locations.add(build.getApkLocation());
+        }
+        if (build.getArtifacts() != null) {
+            locations.addAll(build.getArtifacts().values());
+        }
+        for (String location : locations) {
             try {
-                Path apkPath = Paths.get(build.getApkLocation());
-                Files.deleteIfExists(apkPath);
-                log.info("Deleted APK file: {}", build.getApkLocation());
+                Files.deleteIfExists(Paths.get(location));
+                log.info("Deleted build artifact: {}", location);
             } catch (IOException e) {
-                log.warn("Failed to delete APK file: {}", build.getApkLocation(), e);
+                log.warn("Failed to delete build artifact: {}", location, e);
             }
         }
 
@@ -0,0 +1,183 @@
+package com.flutomapp.app.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs every flutter command of the application: project creation, pub get and
+ * builds, from the pipeline, the template pool and the build service alike.
+ *
+ * - The executable is flutter.command, so nothing depends on a local SDK path.
+ * - At most flutter.max-concurrent processes run at once across the node (they
+ *   are CPU, memory and Gradle-daemon hungry); further callers wait their turn.
+ * - Each command has its own timeout (flutter.<command>-timeout-seconds); on
+ *   timeout, or when the calling thread is interrupted (shutdown), the process
+ *   and everything it started (dart, gradle) is killed before the slot is freed.
+ * - Output (stdout and stderr merged) is drained as it arrives on a virtual
+ *   thread, so a chatty process can never block on a full pipe, and is passed
+ *   line by line to the caller's sink, if any. The last lines are kept for the
+ *   exception message when the command fails.
+ * - flutter.process.duration records each run by command and outcome.
+ */
+@Component
+public class FlutterProcessRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlutterProcessRunner.class);
+    private static final int TAIL_LINES = 20;
+
+    private final String flutterCommand;
+    private final long createTimeoutSeconds;
+    private final long pubTimeoutSeconds;
+    private final long buildTimeoutSeconds;
+    private final long defaultTimeoutSeconds;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final MeterRegistry registry;
+
+    public FlutterProcessRunner(@Value("${flutter.command:flutter}") String flutterCommand,
+                                @Value("${flutter.max-concurrent:2}") int maxConcurrent,
+                                @Value("${flutter.create-timeout-seconds:300}") long createTimeoutSeconds,
+                                @Value("${flutter.pub-timeout-seconds:300}") long pubTimeoutSeconds,
+                                @Value("${flutter.build-timeout-seconds:600}") long buildTimeoutSeconds,
+                                @Value("${flutter.default-timeout-seconds:300}") long defaultTimeoutSeconds,
+                                MeterRegistry registry) {
+        this.flutterCommand = flutterCommand;
+        this.createTimeoutSeconds = createTimeoutSeconds;
+        this.pubTimeoutSeconds = pubTimeoutSeconds;
+        this.buildTimeoutSeconds = buildTimeoutSeconds;
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.registry = registry;
+        Gauge.builder("flutter.process.active", permits, p -> Math.max(1, maxConcurrent) - p.availablePermits())
+                .description("flutter processes running")
+                .register(registry);
+        Gauge.builder("flutter.process.queued", waiting, AtomicInteger::get)
+                .description("flutter commands waiting for a process slot")
+                .register(registry);
+    }
+
+    public void run(List<String> arguments, Path workingDirectory) throws IOException, InterruptedException {
+        run(arguments, workingDirectory, null);
+    }
+
+    /**
+     * Runs flutter with the given arguments (the first is the command, e.g.
+     * "create") in workingDirectory, passing each output line to output if not
+     * null. Throws if the process times out or exits non-zero.
+     */
+    public void run(List<String> arguments, Path workingDirectory, Consumer<String> output)
+            throws IOException, InterruptedException {
+        String command = arguments.isEmpty() ? "" : arguments.get(0);
+        long timeoutSeconds = timeoutSeconds(command);
+        List<String> commandLine = new ArrayList<>(arguments.size() + 1);
+        commandLine.add(flutterCommand);
+        commandLine.addAll(arguments);
+
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long start = System.nanoTime();
+        String outcome = "failure";
+        Process process = null;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(commandLine);
+            pb.directory(workingDirectory.toFile());
+            pb.redirectErrorStream(true);
+            process = pb.start();
+
+            Deque<String> tail = new ArrayDeque<>(TAIL_LINES);
+            Process started = process;
+            Thread drainer = Thread.ofVirtual().name("flutter-" + command + "-output").start(() -> drain(started, output, tail));
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                outcome = "timeout";
+                throw new IOException("flutter " + command + " timed out after " + timeoutSeconds + "s in " + workingDirectory);
+            }
+            // The pipe closes with the process; finish reading what it wrote last
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+            int exitCode = process.exitValue();
+            if (exitCode != 0) {
+                String lastLines;
+                synchronized (tail) {
+                    lastLines = String.join("\n", tail);
+                }
+                throw new IOException("flutter " + command + " exited with " + exitCode + " in " + workingDirectory
+                        + (lastLines.isEmpty() ? "" : ":\n" + lastLines));
+            }
+            outcome = "success";
+        } catch (InterruptedException e) {
+            outcome = "interrupted";
+            throw e;
+        } finally {
+            // Timed out or interrupted (shutdown): the slot is only free once nothing of the command runs
+            if (process != null && process.isAlive()) {
+                kill(process);
+            }
+            permits.release();
+            long nanos = System.nanoTime() - start;
+            Timer.builder("flutter.process.duration")
+                    .tag("command", command)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            logger.debug("flutter {} {} in {} ms", command, outcome, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    // flutter is a wrapper script; dart and gradle underneath would otherwise live on
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private long timeoutSeconds(String command) {
+        return switch (command) {
+            case "create" -> createTimeoutSeconds;
+            case "pub" -> pubTimeoutSeconds;
+            case "build" -> buildTimeoutSeconds;
+            default -> defaultTimeoutSeconds;
+        };
+    }
+
+    private static void drain(Process process, Consumer<String> output, Deque<String> tail) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (tail) {
+                    if (tail.size() == TAIL_LINES) {
+                        tail.removeFirst();
+                    }
+                    tail.addLast(line);
+                }
+                if (output != null) {
+                    output.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            // The stream closes under us when a timed-out process is killed
+        } catch (RuntimeException e) {
+            logger.warn("flutter output sink failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.flutomapp.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Pool of pre-generated `flutter create` projects, so creating a project takes
+ * a directory rename instead of tens of seconds of flutter tooling on the
+ * request thread.
+ *
+ * Templates are generated in the background under placeholder names (below).
+ * A checkout atomically moves one ready template into the new project's
+ * directory and then substitutes the real project name, org and description in
+ * file contents and paths. Each template is used exactly once: pipeline stages
+ * edit files in place, so sharing files between projects (hardlinks) would leak
+ * edits across them. The pool lives under the projects directory so the move
+ * never crosses filesystems, and the filesystem arbitrates concurrent checkouts.
+ */
+@Component
+public class FlutterTemplatePool {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlutterTemplatePool.class);
+
+    // Placeholders the templates are generated with; none is a substring of another
+    private static final String TEMPLATE_ORG = "org.pooltemplateorg";
+    private static final String TEMPLATE_NAME = "pool_template_app";
+    private static final String TEMPLATE_DESCRIPTION = "pooltemplatedescription";
+
+    private static final String READY_PREFIX = "ready-";
+    private static final String BUILDING_PREFIX = "building-";
+    private static final long MAX_TEXT_FILE_BYTES = 1024 * 1024;
+
+    private final Path poolDir;
+    private final int size;
+    private final FlutterProcessRunner flutter;
+    private final ExecutorService replenisher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "flutter-template-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean replenishing = new AtomicBoolean();
+    private final Counter hits;
+    private final Counter misses;
+
+    public FlutterTemplatePool(@Value("${projects.base.dir:projects}") String baseProjectsDir,
+                               @Value("${projects.template-pool.size:2}") int size,
+                               FlutterProcessRunner flutter,
+                               MeterRegistry registry) {
+        this.poolDir = Paths.get(baseProjectsDir, ".template-pool");
+        this.size = size;
+        this.flutter = flutter;
+        this.hits = Counter.builder("projects.template_pool.checkouts")
+                .tag("outcome", "hit")
+                .register(registry);
+        this.misses = Counter.builder("projects.template_pool.checkouts")
+                .tag("outcome", "miss")
+                .register(registry);
+        Gauge.builder("projects.template_pool.ready", this, FlutterTemplatePool::readyCount)
+                .description("Pre-generated Flutter projects waiting to be checked out")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (size <= 0) {
+            return;
+        }
+        Files.createDirectories(poolDir);
+        // Half-generated templates from a previous run are never trusted
+        for (Path dir : list(BUILDING_PREFIX)) {
+            deleteRecursively(dir);
+        }
+        replenish();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replenisher.shutdownNow();
+    }
+
+    /**
+     * Moves a ready template to projectDir (which must not exist) and
+     * personalises it. Returns false when the pool is empty, in which case the
+     * caller runs flutter create itself.
+     */
+    public boolean checkout(Path projectDir, String projectName, String org, String description) {
+        if (size <= 0) {
+            return false;
+        }
+        try {
+            for (Path template : list(READY_PREFIX)) {
+                try {
+                    Files.move(template, projectDir, StandardCopyOption.ATOMIC_MOVE);
+                } catch (NoSuchFileException | FileAlreadyExistsException e) {
+                    // Taken by a concurrent checkout
+                    continue;
+                } catch (AtomicMoveNotSupportedException e) {
+                    logger.warn("Template pool {} is not on the same filesystem as {}, pool disabled", poolDir, projectDir);
+                    break;
+                }
+                personalise(projectDir, projectName, org, description);
+                hits.increment();
+                return true;
+            }
+        } catch (IOException e) {
+            logger.warn("Template checkout for {} failed, falling back to flutter create: {}", projectName, e.getMessage());
+            deleteQuietly(projectDir);
+        } finally {
+            replenish();
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Runs flutter create into parent/projectName. Throws if it fails or does not
+     * finish within flutter.create-timeout-seconds (the process is killed then).
+     */
+    public void flutterCreate(Path parent, String projectName, String org, String description, boolean pubGet)
+            throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(List.of(
+                "create",
+                "--org", org,
+                "--project-name", projectName,
+                "--description", description));
+        if (!pubGet) {
+            arguments.add("--no-pub");
+        }
+        arguments.add(projectName);
+        flutter.run(arguments, parent);
+    }
+
+    private void replenish() {
+        if (size <= 0 || !replenishing.compareAndSet(false, true)) {
+            return;
+        }
+        replenisher.execute(() -> {
+            try {
+                while (readyCount() < size && !Thread.currentThread().isInterrupted()) {
+                    generateTemplate();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.warn("Could not generate a Flutter template, will retry on the next checkout: {}", e.getMessage());
+            } finally {
+                replenishing.set(false);
+            }
+        });
+    }
+
+    private void generateTemplate() throws IOException, InterruptedException {
+        String id = UUID.randomUUID().toString();
+        Path building = poolDir.resolve(BUILDING_PREFIX + id);
+        Files.createDirectories(building);
+        try {
+            // No pub get: .dart_tool would pin machine paths, and finalize resolves packages anyway
+            flutterCreate(building, TEMPLATE_NAME, TEMPLATE_ORG, TEMPLATE_DESCRIPTION, false);
+            // Only complete templates ever carry the ready prefix
+            Files.move(building.resolve(TEMPLATE_NAME), poolDir.resolve(READY_PREFIX + id), StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Flutter template {} ready ({} in pool)", id, readyCount());
+        } finally {
+            deleteRecursively(building);
+        }
+    }
+
+    // Substitutes the placeholders in file contents and paths, the way flutter create would have
+    static void personalise(Path projectDir, String projectName, String org, String description) throws IOException {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put(TEMPLATE_ORG, org);
+        replacements.put(TEMPLATE_ORG.replace('.', '/'), org.replace('.', '/'));
+        replacements.put(TEMPLATE_NAME, projectName);
+        // iOS/macOS bundle ids use the camel case name, display names the title case one
+        replacements.put(camelCase(TEMPLATE_NAME), camelCase(projectName));
+        replacements.put(titleCase(TEMPLATE_NAME), titleCase(projectName));
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(projectDir)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            String text = readText(file);
+            if (text != null && (text.contains(TEMPLATE_DESCRIPTION) || containsAny(text, replacements))) {
+                text = text.replace(TEMPLATE_DESCRIPTION, escapeFor(file, description));
+                Files.writeString(file, replaceAll(text, replacements));
+            }
+            String relative = projectDir.relativize(file).toString().replace('\\', '/');
+            String renamed = replaceAll(relative, replacements);
+            if (!renamed.equals(relative)) {
+                Path target = projectDir.resolve(renamed);
+                Files.createDirectories(target.getParent());
+                Files.move(file, target);
+            }
+        }
+
+        // Directories left empty by the renames (e.g. kotlin/org/pooltemplateorg/...), and parents they
+        // leave empty in turn (kotlin/org). Deepest first, so children go before their parents.
+        List<Path> dirs;
+        try (Stream<Path> walk = Files.walk(projectDir)) {
+            dirs = walk.filter(Files::isDirectory).sorted(Comparator.reverseOrder()).toList();
+        }
+        Set<Path> parentsOfDeleted = new HashSet<>();
+        for (Path dir : dirs) {
+            if (dir.equals(projectDir)) {
+                continue;
+            }
+            if (parentsOfDeleted.contains(dir)
+                    || containsAny(projectDir.relativize(dir).toString().replace('\\', '/'), replacements)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    if (entries.iterator().hasNext()) {
+                        continue;
+                    }
+                }
+                Files.delete(dir);
+                parentsOfDeleted.add(dir.getParent());
+            }
+        }
+    }
+
+    // UTF-8 text content, or null for binaries (NUL bytes, invalid UTF-8) and large files
+    private static String readText(Path file) throws IOException {
+        if (Files.size(file) > MAX_TEXT_FILE_BYTES) {
+            return null;
+        }
+        byte[] bytes;
+        try (InputStream in = Files.newInputStream(file)) {
+            bytes = in.readAllBytes();
+        }
+        for (byte b : bytes) {
+            if (b == 0) {
+                return null;
+            }
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    // The description sits in a double-quoted YAML string, JSON and HTML attributes
+    private static String escapeFor(Path file, String description) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".yaml") || name.endsWith(".json")) {
+            return description.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+        if (name.endsWith(".html")) {
+            return description.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+        return description;
+    }
+
+    private static boolean containsAny(String text, Map<String, String> replacements) {
+        for (String placeholder : replacements.keySet()) {
+            if (text.contains(placeholder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String replaceAll(String text, Map<String, String> replacements) {
+        String result = text;
+        for (Map.Entry<String, String> entry : replacements.entrySet()) {
+            result = result.replace(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    // my_app -> myApp, as flutter create derives iOS bundle ids
+    static String camelCase(String snake) {
+        StringBuilder result = new StringBuilder();
+        String[] parts = snake.split("_");
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].isEmpty()) {
+                continue;
+            }
+            result.append(result.isEmpty() ? parts[i] : Character.toUpperCase(parts[i].charAt(0)) + parts[i].substring(1));
+        }
+        return result.toString();
+    }
+
+    // my_app -> My App, as flutter create derives display names
+    static String titleCase(String snake) {
+        List<String> words = new ArrayList<>();
+        for (String part : snake.split("_")) {
+            if (!part.isEmpty()) {
+                words.add(Character.toUpperCase(part.charAt(0)) + part.substring(1));
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    private int readyCount() {
+        try {
+            return list(READY_PREFIX).size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private List<Path> list(String prefix) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(poolDir)) {
+            return result;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(poolDir, prefix + "*")) {
+            entries.forEach(result::add);
+        }
+        return result;
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try {
+            deleteRecursively(dir);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", dir, e.getMessage());
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -1,198 +1,760 @@
 package com.flutomapp.app.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flutomapp.app.constants.GeminiPrompts;
+import com.flutomapp.app.gemini.GeminiApiException;
+import com.flutomapp.app.gemini.GeminiBulkheads;
+import com.flutomapp.app.gemini.GeminiCachedContent;
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiCallUsage;
+import com.flutomapp.app.gemini.GeminiCircuitBreaker;
+import com.flutomapp.app.gemini.GeminiFileEdit;
+import com.flutomapp.app.gemini.GeminiHedgingPolicy;
+import com.flutomapp.app.gemini.GeminiHttpMetrics;
+import com.flutomapp.app.gemini.GeminiModelRouter;
+import com.flutomapp.app.gemini.GeminiRateLimiter;
+import com.flutomapp.app.gemini.GeminiRequest;
+import com.flutomapp.app.gemini.GeminiRequest.GenerationConfig;
+import com.flutomapp.app.gemini.GeminiResponse;
+import com.flutomapp.app.gemini.GeminiTaskClass;
+import com.flutomapp.app.gemini.GeminiUsageListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class GeminiAIService {
 
     private static final Logger logger = LoggerFactory.getLogger(GeminiAIService.class);
 
+    // SSE lines on success; on an error status the whole body as a single element for logging
+    private static final HttpResponse.BodyHandler<Stream<String>> SSE_LINES = info -> info.statusCode() == 200
+            ? HttpResponse.BodySubscribers.ofLines(StandardCharsets.UTF_8)
+            : HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), Stream::of);
+
+    // google.rpc.RetryInfo in a 429 body, e.g. "retryDelay": "37s"
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    // JSON mode for batched edits: the reply is {"files": [{"path", "content"}]} and parses structurally.
+    // Several whole files come back in one reply, hence the larger output budget.
+    private static final GenerationConfig BATCH_EDIT_CONFIG = GenerationConfig.DEFAULT
+            .withMaxOutputTokens(32768)
+            .withJsonResponse(Map.of(
+                    "type", "OBJECT",
+                    "properties", Map.of("files", Map.of(
+                            "type", "ARRAY",
+                            "items", Map.of(
+                                    "type", "OBJECT",
+                                    "properties", Map.of(
+                                            "path", Map.of("type", "STRING"),
+                                            "content", Map.of("type", "STRING")),
+                                    "required", List.of("path", "content")))),
+                    "required", List.of("files")));
+
     @Value("${gemini.api.key}")
     private String apiKey;
 
-    private final RestTemplate restTemplate;
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
+    private String baseUrl;
+
+    // Default model; GeminiModelRouter may send a task class to another one
+    @Value("${gemini.model:gemini-2.5-flash}")
+    private String model;
+
+    @Value("${gemini.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    // cachedContents rejects prefixes below the model's minimum size; don't bother asking
+    @Value("${gemini.cache.min-tokens:1024}")
+    private long cacheMinTokens;
+
+    @Value("${gemini.http.request-timeout-ms:120000}")
+    private long requestTimeoutMs;
+
+    @Value("${gemini.http.max-retries:3}")
+    private int maxRetries;
+
+    private final HttpClient httpClient;
+    private final ExecutorService geminiExecutor;
+    private final GeminiHttpMetrics httpMetrics;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiBulkheads bulkheads;
+    private final GeminiModelRouter modelRouter;
+    private final GeminiHedgingPolicy hedgingPolicy;
+    private final GeminiUsageListener usageListener;
     private final ObjectMapper objectMapper;
 
-    public GeminiAIService() {
-        this.restTemplate = new RestTemplate();
+    public GeminiAIService(@Qualifier("geminiHttpClient") HttpClient httpClient,
+                           @Qualifier("geminiExecutor") ExecutorService geminiExecutor,
+                           GeminiHttpMetrics httpMetrics,
+                           GeminiRateLimiter rateLimiter,
+                           GeminiCircuitBreaker circuitBreaker,
+                           GeminiBulkheads bulkheads,
+                           GeminiModelRouter modelRouter,
+                           GeminiHedgingPolicy hedgingPolicy,
+                           GeminiUsageListener usageListener) {
+        this.httpClient = httpClient;
+        this.geminiExecutor = geminiExecutor;
+        this.httpMetrics = httpMetrics;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkheads = bulkheads;
+        this.modelRouter = modelRouter;
+        this.hedgingPolicy = hedgingPolicy;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
     }
 
     /**
      * Simple content generation without conversation history
-     * Used by ProjectCreationService for single-prompt operations
+     * Used by ProjectCreationService for single-prompt operations (background priority)
      */
     public String generateContent(String prompt) {
-        return generateContentWithContext(prompt, null);
+        return generateContent(prompt, GeminiCallContext.background("generateContent"));
+    }
+
+    public String generateContent(String prompt, GeminiCallContext callContext) {
+        return generateContentWithContext(prompt, null, callContext);
     }
 
     /**
      * Generate content with conversation history for contextual generation
-     * Used by BuildService for sequential screen generation with context
+     * Used by BuildService for sequential screen generation with context (interactive priority)
      */
     public String generateContentWithContext(String prompt, List<Map<String, String>> conversationHistory) {
+        return generateContentWithContext(prompt, conversationHistory, GeminiCallContext.interactive("generateContentWithContext"));
+    }
+
+    public String generateContentWithContext(String prompt, List<Map<String, String>> conversationHistory, GeminiCallContext callContext) {
+        return await(generateContentWithContextAsync(prompt, conversationHistory, callContext));
+    }
+
+    /**
+     * Non-blocking variant of {@link #generateContent(String)}
+     */
+    public CompletableFuture<String> generateContentAsync(String prompt) {
+        return generateContentWithContextAsync(prompt, null, GeminiCallContext.background("generateContent"));
+    }
+
+    public CompletableFuture<String> generateContentWithContextAsync(String prompt, List<Map<String, String>> conversationHistory) {
+        return generateContentWithContextAsync(prompt, conversationHistory, GeminiCallContext.interactive("generateContentWithContext"));
+    }
+
+    /**
+     * Non-blocking variant of {@link #generateContentWithContext(String, List, GeminiCallContext)}.
+     * Never completes exceptionally: failures complete with an "Error: ..." string,
+     * same as the blocking API. Quota waits and retry backoff are scheduled rather than slept.
+     */
+    public CompletableFuture<String> generateContentWithContextAsync(String prompt, List<Map<String, String>> conversationHistory,
+                                                                     GeminiCallContext callContext) {
         if (prompt == null || prompt.trim().isEmpty()) {
             logger.warn("Empty or null prompt provided");
-            return "Error: Prompt cannot be empty";
+            return CompletableFuture.completedFuture("Error: Prompt cannot be empty");
+        }
+
+        return generateAsync(prompt.trim(), conversationHistory, GenerationConfig.DEFAULT, callContext);
+    }
+
+    /**
+     * Batched edit: every file goes out with all of its instructions in a single
+     * request and the reply is parsed as JSON (path -> complete updated content).
+     * All-or-nothing: any failure or missing file throws, so callers write nothing.
+     */
+    public Map<String, String> editFiles(List<GeminiFileEdit> edits, GeminiCallContext callContext) throws IOException {
+        StringBuilder files = new StringBuilder();
+        for (GeminiFileEdit edit : edits) {
+            files.append("=== FILE: ").append(edit.getPath()).append(" ===\n");
+            files.append("Edit tasks:\n");
+            for (String instruction : edit.getInstructions()) {
+                files.append(instruction).append("\n");
+            }
+            files.append("Current content:\n").append(edit.getContent()).append("\n");
+            files.append("=== END FILE: ").append(edit.getPath()).append(" ===\n\n");
+        }
+        String prompt = GeminiPrompts.BATCH_EDIT_PROMPT.replace("${files}", files);
+
+        String response = await(generateAsync(prompt, null, BATCH_EDIT_CONFIG, callContext));
+        if (response.startsWith("Error:")) {
+            throw new IOException("Batched edit of " + edits.size() + " files failed - " + response);
         }
 
+        Map<String, String> updated = new LinkedHashMap<>();
+        JsonNode filesNode = objectMapper.readTree(stripJsonFence(response)).path("files");
+        for (JsonNode file : filesNode) {
+            updated.put(file.path("path").asText(), file.path("content").asText());
+        }
+        for (GeminiFileEdit edit : edits) {
+            if (!updated.containsKey(edit.getPath()) || updated.get(edit.getPath()).isBlank()) {
+                throw new IOException("Batched edit response is missing " + edit.getPath());
+            }
+        }
+        logger.info("Batched edit of {} files in one call ({})", edits.size(), callContext.getCaller());
+        return updated;
+    }
+
+    private CompletableFuture<String> generateAsync(String prompt, List<Map<String, String>> conversationHistory,
+                                                    GenerationConfig generationConfig, GeminiCallContext callContext) {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             logger.error("Gemini API key is not configured");
-            return "Error: API key not configured";
+            return CompletableFuture.completedFuture("Error: API key not configured");
         }
 
+        GeminiModelRouter.Route route = modelRouter.route(callContext.getTaskClass());
+        String routedModel = route.modelOr(model);
+        GenerationConfig routedConfig = route.applyTo(generationConfig);
+        CallStats stats = new CallStats(route.taskClass(), routedModel);
+        return withCacheFallback(usableCache(callContext, routedModel), cache -> sendGenerate(
+                        createRequest(prompt, conversationHistory, routedConfig, cache), routedModel, callContext, stats))
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    logger.error("Error calling Gemini API: {}", cause.getMessage(), cause);
+                    return "Error: Failed to generate content - " + cause.getMessage();
+                })
+                .thenApply(text -> recordUsage(callContext, stats, text));
+    }
+
+    private CompletableFuture<String> sendGenerate(GeminiRequest geminiRequest, String model, GeminiCallContext callContext,
+                                                   CallStats stats) {
+        RequestBuffer body;
         try {
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent";
+            body = serialize(geminiRequest);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
-            Map<String, Object> requestBody = createRequestBodyWithHistory(prompt.trim(), conversationHistory);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(modelUrl(model, "generateContent")))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Content-Type", "application/json")
+                .header("x-goog-api-key", apiKey)
+                .POST(body.publisher())
+                .build();
+
+        // Raw bytes go straight to the streaming parser: no intermediate String or JsonNode tree.
+        // A slow call may be hedged with a duplicate; each leg holds its own bulkhead permit.
+        return hedgingPolicy.execute(stats.taskClass.getPropertyKey() + ".generate", leg -> withBulkhead(callContext,
+                () -> makeApiCallWithRetry(request, HttpResponse.BodyHandlers.ofByteArray(), callContext,
+                        stats, leg, body.size(), estimateTokens(body.size()), 1)
+                .thenApply(response -> parseResponse(response.body(), stats))));
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("x-goog-api-key", apiKey);
+    /**
+     * Streaming generation via :streamGenerateContent (SSE). Each text delta is handed
+     * to onChunk as it arrives; the returned string is the full text, or "Error: ..."
+     * like the other generate methods. Retries only happen before the stream opens.
+     */
+    public String streamContentWithContext(String prompt, List<Map<String, String>> conversationHistory, Consumer<String> onChunk) {
+        return streamContentWithContext(prompt, conversationHistory, GeminiCallContext.interactive("streamContentWithContext"), onChunk);
+    }
 
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+    public String streamContentWithContext(String prompt, List<Map<String, String>> conversationHistory,
+                                           GeminiCallContext callContext, Consumer<String> onChunk) {
+        return await(streamContentWithContextAsync(prompt, conversationHistory, callContext, onChunk));
+    }
 
-            ResponseEntity<String> response = makeApiCallWithRetry(url, entity, 3);
+    public CompletableFuture<String> streamContentWithContextAsync(String prompt, List<Map<String, String>> conversationHistory,
+                                                                   GeminiCallContext callContext, Consumer<String> onChunk) {
+        if (prompt == null || prompt.trim().isEmpty()) {
+            logger.warn("Empty or null prompt provided");
+            return CompletableFuture.completedFuture("Error: Prompt cannot be empty");
+        }
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                return parseResponse(response.getBody());
-            } else {
-                logger.error("Unexpected response status: {}", response.getStatusCode());
-                return "Error: Unexpected response from Gemini API";
-            }
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            logger.error("Gemini API key is not configured");
+            return CompletableFuture.completedFuture("Error: API key not configured");
+        }
+
+        GeminiModelRouter.Route route = modelRouter.route(callContext.getTaskClass());
+        String routedModel = route.modelOr(model);
+        GenerationConfig routedConfig = route.applyTo(GenerationConfig.DEFAULT);
+        CallStats stats = new CallStats(route.taskClass(), routedModel);
+        return withCacheFallback(usableCache(callContext, routedModel), cache -> sendStream(
+                        createRequest(prompt.trim(), conversationHistory, routedConfig, cache), routedModel, callContext, onChunk, stats))
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    logger.error("Error streaming from Gemini API: {}", cause.getMessage(), cause);
+                    return "Error: Failed to generate content - " + cause.getMessage();
+                })
+                .thenApply(text -> recordUsage(callContext, stats, text));
+    }
+
+    private CompletableFuture<String> sendStream(GeminiRequest geminiRequest, String model, GeminiCallContext callContext,
+                                                 Consumer<String> onChunk, CallStats stats) {
+        RequestBuffer body;
+        try {
+            body = serialize(geminiRequest);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(modelUrl(model, "streamGenerateContent") + "?alt=sse"))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("x-goog-api-key", apiKey)
+                .POST(body.publisher())
+                .build();
+
+        // Reading the event stream blocks, so it runs on the (virtual thread) Gemini executor.
+        // The bulkhead permit is held until the stream is fully read. Streams are only
+        // hedged until the first delta arrives; from then on the first leg owns onChunk.
+        return hedgingPolicy.execute(stats.taskClass.getPropertyKey() + ".stream", leg -> {
+            long started = System.nanoTime();
+            return withBulkhead(callContext, () -> makeApiCallWithRetry(request, SSE_LINES, callContext, stats, leg,
+                            body.size(), estimateTokens(body.size()), 1)
+                    .thenApplyAsync(response -> readEventStream(response.body(), onChunk, started, stats, leg), geminiExecutor));
+        });
+    }
+
+    /**
+     * Caches a conversation prefix server-side (cachedContents) so later calls that
+     * carry the returned handle in their GeminiCallContext send only the rest of
+     * their history. Returns null when caching is disabled, the prefix is below the
+     * API minimum, or creation fails; callers then keep sending the full history.
+     * The cache is created for the model the context's task class routes to and
+     * is only used by calls routed to that same model.
+     */
+    public GeminiCachedContent createCachedContent(List<Map<String, String>> prefix, Duration ttl, GeminiCallContext callContext) {
+        if (!cacheEnabled || apiKey == null || apiKey.trim().isEmpty() || prefix == null || prefix.isEmpty()) {
+            return null;
+        }
+        long estimatedTokens = estimateTokens("", prefix);
+        if (estimatedTokens < cacheMinTokens) {
+            logger.debug("Prefix of ~{} tokens is below the cache minimum of {}, not caching", estimatedTokens, cacheMinTokens);
+            return null;
+        }
 
+        String cacheModel = modelRouter.route(callContext.getTaskClass()).modelOr(model);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeStringField("model", "models/" + cacheModel);
+                GeminiRequest.writeContents(generator, prefix.stream()
+                        .map(message -> new GeminiRequest.Content(message.get("role"), message.get("text")))
+                        .toList());
+                generator.writeStringField("ttl", ttl.toSeconds() + "s");
+                generator.writeEndObject();
+            }
+            byte[] body = out.toByteArray();
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1beta/cachedContents"))
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
+                    .header("Content-Type", "application/json")
+                    .header("x-goog-api-key", apiKey)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+
+            HttpResponse<String> response = withBulkhead(callContext, () -> makeApiCallWithRetry(request,
+                    HttpResponse.BodyHandlers.ofString(), callContext, new CallStats(callContext.getTaskClass(), cacheModel),
+                    GeminiHedgingPolicy.Leg.unhedged(), body.length, estimateTokens(body.length), 1)).get();
+            JsonNode rootNode = objectMapper.readTree(response.body());
+            String name = rootNode.path("name").asText(null);
+            if (name == null) {
+                logger.warn("cachedContents response without a name, sending full prompts");
+                return null;
+            }
+            long tokenCount = rootNode.path("usageMetadata").path("totalTokenCount").asLong(estimatedTokens);
+            httpMetrics.cacheCreated();
+            logger.info("Created {} ({} tokens, ttl {}s) for {}", name, tokenCount, ttl.toSeconds(), callContext.getCaller());
+            return new GeminiCachedContent(name, cacheModel, prefix.size(), tokenCount, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            logger.error("Error calling Gemini API: {}", e.getMessage(), e);
-            return "Error: Failed to generate content - " + e.getMessage();
+            logger.warn("Context caching unavailable, sending full prompts: {}", unwrap(e).getMessage());
+            return null;
         }
     }
 
-    private Map<String, Object> createRequestBodyWithHistory(String prompt, List<Map<String, String>> conversationHistory) {
-        Map<String, Object> requestBody = new HashMap<>();
+    /**
+     * Deletes a cache early (its TTL would expire it anyway). Fire-and-forget.
+     */
+    public void deleteCachedContent(GeminiCachedContent cache) {
+        if (cache == null) {
+            return;
+        }
+        cache.setValid(false);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1beta/" + cache.getName()))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("x-goog-api-key", apiKey)
+                .DELETE()
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != 200) {
+                        logger.warn("Could not delete {} (left to expire): {}", cache.getName(),
+                                error != null ? unwrap(error).getMessage() : "HTTP " + response.statusCode());
+                    }
+                });
+    }
 
-        List<Map<String, Object>> contents = new ArrayList<>();
+    private GeminiCachedContent usableCache(GeminiCallContext callContext, String model) {
+        GeminiCachedContent cache = callContext.getCachedContent();
+        return cache != null && cache.isValid() && model.equals(cache.getModel()) ? cache : null;
+    }
 
-        // Add conversation history if provided
-        if (conversationHistory != null && !conversationHistory.isEmpty()) {
-            for (Map<String, String> message : conversationHistory) {
-                Map<String, Object> content = new HashMap<>();
-                content.put("role", message.get("role")); // "user" or "model"
+    /**
+     * Sends with the cache when there is one. If the API rejects the cached call
+     * (expired or deleted cache, 4xx other than 429) the cache is marked invalid and
+     * the call is resent once with the full history, transparently to the caller.
+     */
+    private CompletableFuture<String> withCacheFallback(GeminiCachedContent cache,
+                                                        Function<GeminiCachedContent, CompletableFuture<String>> send) {
+        if (cache == null) {
+            return send.apply(null);
+        }
+        return send.apply(cache)
+                .thenApply(text -> {
+                    if (!text.startsWith("Error:")) {
+                        httpMetrics.cachedTokensSaved(cache.getTokenCount());
+                    }
+                    return text;
+                })
+                .exceptionallyCompose(e -> {
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof GeminiApiException apiError && apiError.getStatusCode() >= 400
+                            && apiError.getStatusCode() < 500 && apiError.getStatusCode() != 429) {
+                        logger.warn("{} rejected (HTTP {}), resending without cache", cache.getName(), apiError.getStatusCode());
+                        cache.setValid(false);
+                        httpMetrics.cacheFallback();
+                        return send.apply(null);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
 
-                Map<String, String> part = new HashMap<>();
-                part.put("text", message.get("text"));
-                content.put("parts", List.of(part));
+    private String modelUrl(String model, String action) {
+        return baseUrl + "/v1beta/models/" + model + ":" + action;
+    }
 
-                contents.add(content);
+    private String readEventStream(Stream<String> lines, Consumer<String> onChunk, long startedNanos, CallStats stats,
+                                   GeminiHedgingPolicy.Leg leg) {
+        StringBuilder text = new StringBuilder();
+        try (lines) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                if (leg.isCancelled()) {
+                    // Closing the stream cancels the losing hedge leg's exchange
+                    return "Error: Superseded by a faster hedged request";
+                }
+                String line = iterator.next();
+                // Only "data:" lines carry payload; blank lines separate events
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.isEmpty()) {
+                    continue;
+                }
+                String delta = parseStreamChunk(data, stats);
+                if (delta.isEmpty()) {
+                    continue;
+                }
+                if (text.length() == 0) {
+                    if (!leg.claim()) {
+                        return "Error: Superseded by a faster hedged request";
+                    }
+                    httpMetrics.firstToken(System.nanoTime() - startedNanos);
+                }
+                text.append(delta);
+                onChunk.accept(delta);
             }
         }
+        if (text.length() == 0) {
+            return "Error: Empty streaming response from Gemini API";
+        }
+        return text.toString().trim();
+    }
+
+    // Each SSE event is a small GenerateContentResponse holding only the new text delta
+    private String parseStreamChunk(String data, CallStats stats) {
+        GeminiResponse chunk;
+        try (JsonParser parser = objectMapper.createParser(data)) {
+            chunk = GeminiResponse.read(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Malformed stream chunk: " + e.getMessage(), e);
+        }
+        if (chunk.error() != null) {
+            throw new RuntimeException("Gemini stream error: " + chunk.error());
+        }
+        // usageMetadata is cumulative; the last chunk carries the totals
+        if (chunk.usage() != GeminiResponse.Usage.NONE) {
+            stats.usage = chunk.usage();
+        }
+        return chunk.text();
+    }
+
+    private GeminiRequest createRequest(String prompt, List<Map<String, String>> conversationHistory,
+                                        GenerationConfig generationConfig, GeminiCachedContent cache) {
+        // With a cache, the cached prefix of the history is referenced instead of resent
+        List<Map<String, String>> history = conversationHistory != null ? conversationHistory : List.of();
+        if (cache != null && history.size() >= cache.getMessageCount()) {
+            history = history.subList(cache.getMessageCount(), history.size());
+        }
 
-        // Add current prompt
-        Map<String, Object> currentContent = new HashMap<>();
-        currentContent.put("role", "user");
-        Map<String, String> part = new HashMap<>();
-        part.put("text", prompt);
-        currentContent.put("parts", List.of(part));
-        contents.add(currentContent);
+        List<GeminiRequest.Content> contents = new ArrayList<>(history.size() + 1);
+        for (Map<String, String> message : history) {
+            contents.add(new GeminiRequest.Content(message.get("role"), message.get("text"))); // "user" or "model"
+        }
+        contents.add(new GeminiRequest.Content("user", prompt));
+
+        return new GeminiRequest(contents, generationConfig, cache != null ? cache.getName() : null);
+    }
+
+    // Written once with the streaming generator; the same bytes are reused for every retry
+    private RequestBuffer serialize(GeminiRequest geminiRequest) throws IOException {
+        RequestBuffer out = new RequestBuffer(geminiRequest.estimatedJsonSize());
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            geminiRequest.writeTo(generator);
+        }
+        return out;
+    }
+
+    // Pre-sized output buffer published as-is, without the copy toByteArray() would make
+    private static final class RequestBuffer extends ByteArrayOutputStream {
+        RequestBuffer(int size) {
+            super(size);
+        }
 
-        requestBody.put("contents", contents);
+        HttpRequest.BodyPublisher publisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
 
-        // Generation config
-        Map<String, Object> generationConfig = new HashMap<>();
-        generationConfig.put("temperature", 0.7);
-        generationConfig.put("topK", 40);
-        generationConfig.put("topP", 0.95);
-        generationConfig.put("maxOutputTokens", 8192);
-        requestBody.put("generationConfig", generationConfig);
+    /**
+     * Runs a whole logical call (all retries, and for streams the full read) inside
+     * the bulkhead of its traffic class. A full bulkhead fails the call immediately.
+     */
+    private <R> CompletableFuture<R> withBulkhead(GeminiCallContext callContext, Supplier<CompletableFuture<R>> call) {
+        return bulkheads.acquire(callContext.getPriority())
+                .thenCompose(permit -> {
+                    CompletableFuture<R> result;
+                    try {
+                        result = call.get();
+                    } catch (RuntimeException e) {
+                        result = CompletableFuture.failedFuture(e);
+                    }
+                    return result.whenComplete((value, error) -> bulkheads.release(callContext.getPriority()));
+                });
+    }
+
+    /**
+     * One attempt = ask the circuit breaker, wait for quota from the shared limiter,
+     * then send. An open breaker fails fast without touching the network. 429s honour
+     * Retry-After (pausing the limiter for every caller); 5xx and I/O errors back
+     * off with jitter and count against the breaker. All waiting is scheduled, no thread sleeps.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> makeApiCallWithRetry(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                                                                        GeminiCallContext callContext, CallStats stats,
+                                                                        GeminiHedgingPolicy.Leg leg, long bodyBytes,
+                                                                        long estimatedTokens, int attempt) {
+        if (leg.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("Superseded by a faster hedged request"));
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            long retryInSeconds = (circuitBreaker.retryInMillis() + 999) / 1000;
+            logger.warn("Gemini circuit breaker {}, rejecting call ({})", circuitBreaker.getState(), callContext.getCaller());
+            return CompletableFuture.failedFuture(new RuntimeException(
+                    "Gemini temporarily unavailable (circuit breaker " + circuitBreaker.getState() + ", retry in " + retryInSeconds + "s)"));
+        }
+        return leg.track(rateLimiter.acquire(callContext.getPriority(), estimatedTokens))
+                .handle((granted, quotaError) -> {
+                    if (quotaError != null) {
+                        // Only a cancelled hedge leg gives up its place in the quota queue
+                        circuitBreaker.onIgnored();
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(quotaError);
+                    }
+                    logger.debug("API call attempt {} of {} ({})", attempt, maxRetries, callContext.getCaller());
+                    stats.attempts.incrementAndGet();
+                    long started = httpMetrics.exchangeStarted(bodyBytes);
+                    return leg.track(httpClient.sendAsync(request, bodyHandler))
+                            .handle((response, error) -> {
+                                if (error != null) {
+                                    Throwable cause = unwrap(error);
+                                    httpMetrics.exchangeFailed(started, cause);
+                                    if (leg.isCancelled()) {
+                                        // Cancelled by us, not a Gemini failure
+                                        circuitBreaker.onIgnored();
+                                        return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                                    }
+                                    circuitBreaker.onFailure();
+                                    if (cause instanceof IOException && attempt < maxRetries) {
+                                        Duration delay = backoffDelay(attempt);
+                                        logger.warn("Connection error ({}), retrying in {} ms", cause.getClass().getSimpleName(), delay.toMillis());
+                                        return retryLater(request, bodyHandler, callContext, stats, leg, bodyBytes, estimatedTokens, attempt, delay);
+                                    }
+                                    logger.error("Connection error: {}", cause.getMessage());
+                                    return CompletableFuture.<HttpResponse<T>>failedFuture(
+                                            new RuntimeException("API call failed after " + attempt + " attempts", cause));
+                                }
+
+                                httpMetrics.exchangeCompleted(started, response, responseSize(response));
+                                int status = response.statusCode();
+                                if (status >= 500) {
+                                    circuitBreaker.onFailure();
+                                } else if (status < 400) {
+                                    circuitBreaker.onSuccess();
+                                } else {
+                                    circuitBreaker.onIgnored();
+                                }
+                                if (status == 200 && response.body() != null) {
+                                    return CompletableFuture.completedFuture(response);
+                                }
+                                if (status == 429 && attempt < maxRetries) {
+                                    String errorBody = errorBody(response);
+                                    Duration delay = retryAfter(response, errorBody).orElseGet(() -> backoffDelay(attempt));
+                                    logger.warn("Rate limited, pausing Gemini calls for {} ms", delay.toMillis());
+                                    // The limiter holds back every caller until the quota window reopens
+                                    rateLimiter.backOff(delay);
+                                    return retryLater(request, bodyHandler, callContext, stats, leg, bodyBytes, estimatedTokens, attempt, Duration.ZERO);
+                                }
+                                if (status >= 500 && attempt < maxRetries) {
+                                    Duration delay = backoffDelay(attempt);
+                                    logger.warn("Server error {}, retrying in {} ms", status, delay.toMillis());
+                                    return retryLater(request, bodyHandler, callContext, stats, leg, bodyBytes, estimatedTokens, attempt, delay);
+                                }
+                                logger.error("Gemini API error: {} - {}", status, errorBody(response));
+                                return CompletableFuture.<HttpResponse<T>>failedFuture(
+                                        new GeminiApiException(status, "API call failed after " + attempt + " attempts: HTTP " + status));
+                            })
+                            .thenCompose(Function.identity());
+                })
+                .thenCompose(Function.identity());
+    }
 
-        return requestBody;
+    private <T> CompletableFuture<HttpResponse<T>> retryLater(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                                                              GeminiCallContext callContext, CallStats stats,
+                                                              GeminiHedgingPolicy.Leg leg, long bodyBytes,
+                                                              long estimatedTokens, int attempt, Duration delay) {
+        httpMetrics.retried();
+        // Scheduled, not slept: no thread is held while backing off
+        Executor delayed = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, geminiExecutor);
+        return CompletableFuture.runAsync(() -> { }, delayed)
+                .thenCompose(ignored -> makeApiCallWithRetry(request, bodyHandler, callContext, stats, leg, bodyBytes, estimatedTokens, attempt + 1));
     }
 
-    private ResponseEntity<String> makeApiCallWithRetry(String url, HttpEntity<Map<String, Object>> entity, int maxRetries) {
-        int attempts = 0;
-        Exception lastException = null;
+    // Full jitter over an exponential ceiling so concurrent callers spread out instead of retrying in lockstep
+    private Duration backoffDelay(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(attempt, 10));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+    }
 
-        while (attempts < maxRetries) {
+    private Optional<Duration> retryAfter(HttpResponse<?> response, String body) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (header.isPresent()) {
+            String value = header.get().trim();
             try {
-                attempts++;
-                logger.debug("API call attempt {} of {}", attempts, maxRetries);
-                return restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-            } catch (HttpClientErrorException e) {
-                lastException = e;
-                if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS && attempts < maxRetries) {
-                    logger.warn("Rate limited, retrying in {} seconds", attempts * 2);
-                    sleep(attempts * 2000);
-                } else {
-                    logger.error("Client error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
-                    break;
-                }
-            } catch (HttpServerErrorException e) {
-                lastException = e;
-                if (attempts < maxRetries) {
-                    logger.warn("Server error, retrying in {} seconds", attempts * 2);
-                    sleep(attempts * 2000);
-                } else {
-                    logger.error("Server error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
-                    break;
-                }
-            } catch (ResourceAccessException e) {
-                lastException = e;
-                if (attempts < maxRetries) {
-                    logger.warn("Connection error, retrying in {} seconds", attempts * 2);
-                    sleep(attempts * 2000);
-                } else {
-                    logger.error("Connection error: {}", e.getMessage());
-                    break;
+                return Optional.of(Duration.ofSeconds(Long.parseLong(value)));
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                    Duration delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                    return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+                } catch (Exception ignored) {
+                    logger.debug("Unparseable Retry-After header: {}", value);
                 }
             }
         }
+        if (body != null) {
+            Matcher matcher = RETRY_DELAY.matcher(body);
+            if (matcher.find()) {
+                return Optional.of(Duration.ofMillis((long) (Double.parseDouble(matcher.group(1)) * 1000)));
+            }
+        }
+        return Optional.empty();
+    }
 
-        throw new RuntimeException("API call failed after " + maxRetries + " attempts", lastException);
+    // Rough input-token estimate (~4 characters per token) used for the tokens/minute bucket
+    private long estimateTokens(long requestBytes) {
+        return requestBytes / 4 + 1;
     }
 
-    private String parseResponse(String responseBody) {
-        try {
-            JsonNode rootNode = objectMapper.readTree(responseBody);
-            JsonNode candidatesNode = rootNode.path("candidates");
+    private long estimateTokens(String prompt, List<Map<String, String>> conversationHistory) {
+        long chars = prompt.length();
+        if (conversationHistory != null) {
+            for (Map<String, String> message : conversationHistory) {
+                String text = message.get("text");
+                chars += text != null ? text.length() : 0;
+            }
+        }
+        return chars / 4 + 1;
+    }
 
-            if (candidatesNode.isArray() && candidatesNode.size() > 0) {
-                JsonNode firstCandidate = candidatesNode.get(0);
-                JsonNode contentNode = firstCandidate.path("content");
-                JsonNode partsNode = contentNode.path("parts");
+    private long responseSize(HttpResponse<?> response) {
+        if (response.body() instanceof byte[] body) {
+            return body.length;
+        }
+        if (response.body() instanceof String body) {
+            return body.length();
+        }
+        return response.headers().firstValueAsLong("content-length").orElse(0L);
+    }
+
+    private String errorBody(HttpResponse<?> response) {
+        if (response.body() instanceof Stream<?> lines) {
+            return lines.map(String::valueOf).collect(Collectors.joining("\n"));
+        }
+        if (response.body() instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return String.valueOf(response.body());
+    }
 
-                if (partsNode.isArray() && partsNode.size() > 0) {
-                    JsonNode firstPart = partsNode.get(0);
-                    JsonNode textNode = firstPart.path("text");
+    private String parseResponse(byte[] responseBody, CallStats stats) {
+        try (JsonParser parser = objectMapper.createParser(responseBody)) {
+            GeminiResponse response = GeminiResponse.read(parser);
+            stats.usage = response.usage();
 
-                    if (!textNode.isMissingNode() && !textNode.isNull()) {
-                        return textNode.asText().trim();
-                    }
-                }
+            if (response.error() != null) {
+                logger.error("Gemini API error: {}", response.error());
+                return "Error: " + response.error();
             }
 
-            JsonNode errorNode = rootNode.path("error");
-            if (!errorNode.isMissingNode()) {
-                String errorMessage = errorNode.path("message").asText("Unknown error");
-                logger.error("Gemini API error: {}", errorMessage);
-                return "Error: " + errorMessage;
+            if (!response.text().isEmpty()) {
+                return response.text().trim();
             }
 
-            logger.warn("Could not parse response structure: {}", responseBody);
+            logger.warn("Could not parse response structure (finishReason {})", response.finishReason());
             return "Error: Unable to parse response from Gemini API";
 
         } catch (Exception e) {
@@ -201,12 +763,67 @@ public class GeminiAIService {
         }
     }
 
-    private void sleep(long milliseconds) {
+    /**
+     * Reports the finished logical call to the usage listener. Retries count every
+     * attempt after the first, including a cache-fallback resend.
+     */
+    private String recordUsage(GeminiCallContext callContext, CallStats stats, String text) {
+        GeminiResponse.Usage usage = stats.usage;
+        long latencyNanos = System.nanoTime() - stats.startedNanos;
+        modelRouter.recordLatency(stats.taskClass, stats.model, latencyNanos, !text.startsWith("Error:"));
         try {
-            Thread.sleep(milliseconds);
+            usageListener.onCall(new GeminiCallUsage(callContext, !text.startsWith("Error:"),
+                    Math.max(0, stats.attempts.get() - 1),
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos),
+                    usage.promptTokens(), usage.outputTokens(), usage.cachedTokens()));
+        } catch (RuntimeException e) {
+            logger.warn("Usage listener failed for {}: {}", callContext.getCaller(), e.getMessage());
+        }
+        return text;
+    }
+
+    // Per logical call: routing, attempts made and the usage of the response that was finally parsed
+    private static final class CallStats {
+        final GeminiTaskClass taskClass;
+        final String model;
+        final long startedNanos = System.nanoTime();
+        final AtomicInteger attempts = new AtomicInteger();
+        volatile GeminiResponse.Usage usage = GeminiResponse.Usage.NONE;
+
+        CallStats(GeminiTaskClass taskClass, String model) {
+            this.taskClass = taskClass;
+            this.model = model;
+        }
+    }
+
+    // JSON mode normally returns bare JSON; tolerate a ```json fence anyway
+    private String stripJsonFence(String text) {
+        String trimmed = text.trim();
+        if (trimmed.startsWith("```")) {
+            trimmed = trimmed.substring(trimmed.indexOf('\n') + 1);
+            if (trimmed.endsWith("```")) {
+                trimmed = trimmed.substring(0, trimmed.length() - 3);
+            }
+        }
+        return trimmed.trim();
+    }
+
+    private String await(CompletableFuture<String> result) {
+        try {
+            return result.get();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            logger.warn("Sleep interrupted");
+            return "Error: Failed to generate content - interrupted";
+        } catch (ExecutionException e) {
+            return "Error: Failed to generate content - " + e.getCause().getMessage();
+        }
+    }
+
+    private Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
         }
+        return cause;
     }
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package com.flutomapp.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Renders a project's launcher icons from the uploaded image, in the JVM,
+ * replacing flutter_launcher_icons (a dev dependency, a pubspec edit and a
+ * flutter subprocess per project).
+ *
+ * The image is decoded once and drawn, in parallel, at every size needed:
+ * - android: mipmap-{m,h,xh,xxh,xxxh}dpi/ic_launcher.png, and for API 26+ an
+ *   adaptive icon, with the image inset in the 108dp foreground layer's safe
+ *   zone over a background colour taken from the image's border
+ * - ios: every PNG of the template's AppIcon.appiconset, at that file's own
+ *   size, flattened onto the background (the App Store rejects alpha)
+ * Non-square images are centred, not stretched. Files are written to a temp
+ * file and renamed, so a retried stage never leaves a half-written icon.
+ */
+@Component
+public class LauncherIconGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LauncherIconGenerator.class);
+
+    private static final String ANDROID_RES = "android/app/src/main/res";
+    private static final String IOS_ICON_SET = "ios/Runner/Assets.xcassets/AppIcon.appiconset";
+
+    // Density bucket -> pixels of a 48dp legacy icon; the adaptive layers are 108dp
+    private static final String[] DENSITIES = {"mdpi", "hdpi", "xhdpi", "xxhdpi", "xxxhdpi"};
+    private static final double[] SCALES = {1, 1.5, 2, 3, 4};
+    private static final int LEGACY_DP = 48;
+    private static final int ADAPTIVE_DP = 108;
+    // The launcher masks the outer 18dp on each side; keep the image within the 72dp that always shows
+    private static final double ADAPTIVE_CONTENT = 72.0 / 108;
+
+    private static final String ADAPTIVE_ICON_XML = """
+            <?xml version="1.0" encoding="utf-8"?>
+            <adaptive-icon xmlns:android="http://schemas.android.com/apk/res/android">
+                <background android:drawable="@color/ic_launcher_background"/>
+                <foreground android:drawable="@drawable/ic_launcher_foreground"/>
+            </adaptive-icon>
+            """;
+
+    private record Render(Path target, int size, double content, boolean opaque) {
+    }
+
+    public void generate(InputStream image, Path projectPath) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage source = ImageIO.read(image);
+        if (source == null) {
+            throw new IllegalArgumentException("App icon is not an image format this server can read (use PNG or JPEG)");
+        }
+        Color background = borderColor(source);
+
+        List<Render> renders = new ArrayList<>();
+        Path res = projectPath.resolve(ANDROID_RES);
+        for (int i = 0; i < DENSITIES.length; i++) {
+            renders.add(new Render(res.resolve("mipmap-" + DENSITIES[i]).resolve("ic_launcher.png"),
+                    (int) Math.round(LEGACY_DP * SCALES[i]), 1, false));
+            renders.add(new Render(res.resolve("drawable-" + DENSITIES[i]).resolve("ic_launcher_foreground.png"),
+                    (int) Math.round(ADAPTIVE_DP * SCALES[i]), ADAPTIVE_CONTENT, false));
+        }
+        Path iconSet = projectPath.resolve(IOS_ICON_SET);
+        if (Files.isDirectory(iconSet)) {
+            try (Stream<Path> files = Files.list(iconSet)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".png")).toList()) {
+                    int size = pngWidth(file);
+                    if (size > 0) {
+                        renders.add(new Render(file, size, 1, true));
+                    }
+                }
+            }
+        }
+
+        try {
+            // Scaling and PNG encoding are CPU-bound and independent per size
+            renders.parallelStream().forEach(render -> {
+                try {
+                    write(render(source, render, background), render.target());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        write(ADAPTIVE_ICON_XML, res.resolve("mipmap-anydpi-v26").resolve("ic_launcher.xml"));
+        write("""
+                <?xml version="1.0" encoding="utf-8"?>
+                <resources>
+                    <color name="ic_launcher_background">%s</color>
+                </resources>
+                """.formatted(String.format("#%06X", background.getRGB() & 0xFFFFFF)),
+                res.resolve("values").resolve("ic_launcher_background.xml"));
+
+        logger.info("Rendered {} launcher icons for {} from a {}x{} image in {} ms", renders.size(), projectPath,
+                source.getWidth(), source.getHeight(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static BufferedImage render(BufferedImage source, Render render, Color background) {
+        int size = render.size();
+        BufferedImage icon = new BufferedImage(size, size,
+                render.opaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = icon.createGraphics();
+        try {
+            if (render.opaque()) {
+                g.setColor(background);
+                g.fillRect(0, 0, size, size);
+            }
+            // Fit the longer side into the content box, centred
+            double box = size * render.content();
+            double scale = box / Math.max(source.getWidth(), source.getHeight());
+            int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+            BufferedImage scaled = downscale(source, width, height);
+            g.drawImage(scaled, (size - width) / 2, (size - height) / 2, null);
+        } finally {
+            g.dispose();
+        }
+        return icon;
+    }
+
+    // Halves the image until one step from the target: a single bicubic pass from 1024px to 48px skips most source pixels
+    private static BufferedImage downscale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2 >= width ? w / 2 : width);
+            h = Math.max(height, h / 2 >= height ? h / 2 : height);
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    // Average of the opaque border pixels: the colour the image's own background would extend with. White if none.
+    static Color borderColor(BufferedImage image) {
+        long red = 0, green = 0, blue = 0, count = 0;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        for (int x = 0; x < w; x++) {
+            for (int y : new int[]{0, h - 1}) {
+                int argb = image.getRGB(x, y);
+                if (argb >>> 24 >= 128) {
+                    red += (argb >> 16) & 0xFF;
+                    green += (argb >> 8) & 0xFF;
+                    blue += argb & 0xFF;
+                    count++;
+                }
+            }
+        }
+        for (int y = 1; y < h - 1; y++) {
+            for (int x : new int[]{0, w - 1}) {
+                int argb = image.getRGB(x, y);
+                if (argb >>> 24 >= 128) {
+                    red += (argb >> 16) & 0xFF;
+                    green += (argb >> 8) & 0xFF;
+                    blue += argb & 0xFF;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return Color.WHITE;
+        }
+        return new Color((int) (red / count), (int) (green / count), (int) (blue / count));
+    }
+
+    // Width from the PNG header, without decoding the image; 0 if unreadable
+    private static int pngWidth(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return 0;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return reader.getWidth(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static void write(BufferedImage image, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                ImageIO.write(image, "png", out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(String content, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, content, StandardCharsets.UTF_8);
+    }
+}
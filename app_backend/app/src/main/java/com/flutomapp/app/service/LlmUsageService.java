@@ -0,0 +1,112 @@
+package com.flutomapp.app.service;
+
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiCallUsage;
+import com.flutomapp.app.gemini.GeminiUsageListener;
+import com.flutomapp.app.model.BuildEntity;
+import com.flutomapp.app.model.LlmUsageDailyEntity;
+import com.flutomapp.app.model.ProjectEntity;
+import com.flutomapp.app.repository.LlmUsageDailyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Per-call Gemini usage accounting. Every call is added with atomic $inc updates
+ * to its build, its project and the organisation's daily rollup (upserted), and
+ * exported as Micrometer meters per caller. Recording never fails a call.
+ */
+@Service
+public class LlmUsageService implements GeminiUsageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmUsageService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final LlmUsageDailyRepository dailyRepository;
+    private final MeterRegistry meterRegistry;
+
+    public LlmUsageService(MongoTemplate mongoTemplate, LlmUsageDailyRepository dailyRepository, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.dailyRepository = dailyRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onCall(GeminiCallUsage usage) {
+        GeminiCallContext callContext = usage.callContext();
+        String caller = callContext.getCaller() != null ? callContext.getCaller() : "unknown";
+        recordMetrics(caller, usage);
+
+        try {
+            if (callContext.getBuildId() != null) {
+                mongoTemplate.updateFirst(query(where("buildId").is(callContext.getBuildId())),
+                        increments(new Update(), "llmUsage", usage), BuildEntity.class);
+            }
+            if (callContext.getProjectId() != null) {
+                mongoTemplate.updateFirst(query(where("id").is(callContext.getProjectId())),
+                        increments(new Update(), "llmUsage", usage), ProjectEntity.class);
+            }
+            String organisationId = callContext.getOrganisationId();
+            if (organisationId != null) {
+                LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                Update update = increments(new Update(), "usage", usage);
+                // Mongo field names can't contain '.'
+                increments(update, "byCaller." + caller.replace('.', '_'), usage);
+                update.setOnInsert("organisationId", organisationId).setOnInsert("date", today);
+                mongoTemplate.upsert(query(where("id").is(organisationId + ":" + today)), update, LlmUsageDailyEntity.class);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not record LLM usage for {}: {}", caller, e.getMessage());
+        }
+    }
+
+    /**
+     * Daily rollups for an organisation, both ends inclusive.
+     */
+    public List<LlmUsageDailyEntity> getDailyUsage(String organisationId, LocalDate from, LocalDate to) {
+        return dailyRepository.findByOrganisationIdAndDateBetweenOrderByDateAsc(organisationId, from.minusDays(1), to.plusDays(1));
+    }
+
+    private Update increments(Update update, String prefix, GeminiCallUsage usage) {
+        return update.inc(prefix + ".calls", 1)
+                .inc(prefix + ".failedCalls", usage.success() ? 0 : 1)
+                .inc(prefix + ".retries", usage.retries())
+                .inc(prefix + ".promptTokens", usage.promptTokens())
+                .inc(prefix + ".outputTokens", usage.outputTokens())
+                .inc(prefix + ".cachedTokens", usage.cachedTokens())
+                .inc(prefix + ".latencyMs", usage.latencyMs());
+    }
+
+    private void recordMetrics(String caller, GeminiCallUsage usage) {
+        Timer.builder("gemini.calls")
+                .description("Logical Gemini calls (including retries) by caller")
+                .tag("caller", caller)
+                .tag("outcome", usage.success() ? "success" : "failure")
+                .register(meterRegistry)
+                .record(usage.latencyMs(), TimeUnit.MILLISECONDS);
+        tokenCounter(caller, "prompt").increment(usage.promptTokens());
+        tokenCounter(caller, "output").increment(usage.outputTokens());
+        tokenCounter(caller, "cached").increment(usage.cachedTokens());
+    }
+
+    private Counter tokenCounter(String caller, String type) {
+        return Counter.builder("gemini.tokens")
+                .baseUnit("tokens")
+                .tag("caller", caller)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
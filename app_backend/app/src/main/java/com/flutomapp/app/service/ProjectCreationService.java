@@ -4,8 +4,21 @@ import com.flutomapp.app.config.KafkaTopicConfig;
 import com.flutomapp.app.constants.GeminiPrompts;
 import com.flutomapp.app.dtomodel.OrganisationDto;
 import com.flutomapp.app.dtomodel.ProjectEntityDto;
+import com.flutomapp.app.editor.AndroidManifestEditor;
+import com.flutomapp.app.editor.GradleEditor;
+import com.flutomapp.app.editor.LocalEditException;
+import com.flutomapp.app.editor.MainDartEditor;
+import com.flutomapp.app.editor.ProjectFileEdit;
+import com.flutomapp.app.editor.PubspecEditor;
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiFileEdit;
+import com.flutomapp.app.gemini.GeminiTaskClass;
 import com.flutomapp.app.httpmodels.ProjectCreationMetaResponse;
+import com.flutomapp.app.kafka.BlobRef;
 import com.flutomapp.app.kafka.KafkaProducerService;
+import com.flutomapp.app.kafka.MainDartPatch;
+import com.flutomapp.app.kafka.PipelineStage;
+import com.flutomapp.app.kafka.PubspecPatch;
 import com.flutomapp.app.model.OrganisationEntity;
 import com.flutomapp.app.model.ProjectEntity;
 import com.flutomapp.app.repository.OrganisationRepository;
@@ -24,8 +37,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import com.flutomapp.app.config.KafkaTopicConfig;
 import com.flutomapp.app.kafka.ProjectCreationEventSample;
@@ -44,19 +55,56 @@ public class ProjectCreationService {
 
     // Add these as fields in ProjectCreationService:
     private final KafkaProducerService kafkaProducerService;
+    private final FlutterTemplatePool templatePool;
+    private final BlobStore blobStore;
+    private final ProjectPipelineJoinService pipelineJoinService;
+    private final ProjectZipper projectZipper;
+    private final LauncherIconGenerator launcherIconGenerator;
+    private final FlutterProcessRunner flutter;
+
+    @Value("${projects.zip.on-finalize:false}")
+    private boolean zipOnFinalize;
 
     // Update constructor:
     public ProjectCreationService(GeminiAIService geminiAIService,
                                   ProjectRepository projectRepository,
                                   OrganisationRepository organisationRepository,
-                                  KafkaProducerService kafkaProducerService) {
+                                  KafkaProducerService kafkaProducerService,
+                                  FlutterTemplatePool templatePool,
+                                  BlobStore blobStore,
+                                  ProjectPipelineJoinService pipelineJoinService,
+                                  ProjectZipper projectZipper,
+                                  LauncherIconGenerator launcherIconGenerator,
+                                  FlutterProcessRunner flutter) {
         this.geminiAIService = geminiAIService;
         this.projectRepository = projectRepository;
         this.organisationRepository = organisationRepository;
         this.kafkaProducerService = kafkaProducerService;
+        this.templatePool = templatePool;
+        this.blobStore = blobStore;
+        this.pipelineJoinService = pipelineJoinService;
+        this.projectZipper = projectZipper;
+        this.launcherIconGenerator = launcherIconGenerator;
+        this.flutter = flutter;
     }
 
-    // Replace createProjectMetaOnly:
+    // Project files are built under this prefix next to their final directory, see stageProjectFiles
+    private static final String STAGING_PREFIX = ".creating-";
+
+    // Dart package names, and the reverse-domain org flutter create accepts
+    private static final Pattern PROJECT_NAME = Pattern.compile("[a-z][a-z0-9_]*");
+    private static final Pattern ORG = Pattern.compile("[A-Za-z][A-Za-z0-9_]*(\\.[A-Za-z][A-Za-z0-9_]*)*");
+    private static final Set<String> DART_RESERVED_WORDS = Set.of(
+            "abstract", "as", "assert", "async", "await", "break", "case", "catch", "class", "const", "continue",
+            "default", "do", "else", "enum", "export", "extends", "false", "final", "finally", "for", "if",
+            "implements", "import", "in", "is", "library", "new", "null", "part", "rethrow", "return", "super",
+            "switch", "this", "throw", "true", "try", "var", "void", "while", "with", "yield");
+
+    /**
+     * Validates the request, saves the project as PENDING and hands everything
+     * else (flutter create included) to the Kafka pipeline, so the request costs
+     * one Mongo write. Progress is polled from /project/status/{id}.
+     */
     public ProjectCreationMetaResponse createProjectMetaOnly(
             String projectName,
             String organisationName,
@@ -69,22 +117,16 @@ public class ProjectCreationService {
             MultipartFile appIcon,
             OrganisationEntity organisation
     ) {
+        validateProjectRequest(projectName, organisationName, envKeys, envValues, requireFirebase, googleServicesJson);
+
         long start = System.currentTimeMillis();
         String uniqueId = UUID.randomUUID().toString();
-        Path projectRootPath = Paths.get(baseProjectsDir, uniqueId);
 
         try {
-            // STEP 0: Only flutter create — synchronous
-            Files.createDirectories(projectRootPath);
-            runFlutterCreate(projectName, organisationName, description, projectRootPath);
-            Path flutterProjectDir = projectRootPath.resolve(projectName);
-            Files.createDirectories(flutterProjectDir.resolve("assets"));
-
-            // Save project to DB with PROCESSING status
             ProjectEntity project = new ProjectEntity();
             project.setId(uniqueId);
             project.setOrganisation(organisation);
-            project.setStatus("PROCESSING");
+            project.setStatus("PENDING");
             project.setProjectName(projectName);
 
             if (envKeys != null && !envKeys.isEmpty()) {
@@ -100,36 +142,39 @@ public class ProjectCreationService {
             project.setAndroidPermissions(androidPermissions);
             ProjectEntity savedProject = projectRepository.save(project);
 
-            List<ProjectEntity> projects = organisation.getProjects();
-            projects.add(savedProject);
-            organisation.setProjects(projects);
-            organisationRepository.save(organisation);
-
-            long end = System.currentTimeMillis();
-
             ProjectCreationEventSample event = new ProjectCreationEventSample();
             event.setUniqueId(uniqueId);
             event.setProjectName(projectName);
             event.setOrganisationId(organisation.getId());
+            event.setOrganisationName(organisationName);
+            event.setDescription(description);
             event.setEnvKeys(envKeys);
             event.setEnvValues(envValues);
             event.setAndroidPermissions(androidPermissions);
             event.setRequireFirebase(requireFirebase);
 
-            // Encode files to base64 for Kafka transport
+            // Uploads go to the blob store; the event only carries their references
             if (googleServicesJson != null && !googleServicesJson.isEmpty()) {
-                event.setGoogleServicesJsonBase64(
-                        Base64.getEncoder().encodeToString(googleServicesJson.getBytes()));
+                try (InputStream in = googleServicesJson.getInputStream()) {
+                    event.setGoogleServicesJson(blobStore.put(in));
+                }
             }
             if (appIcon != null && !appIcon.isEmpty()) {
-                event.setAppIconBase64(
-                        Base64.getEncoder().encodeToString(appIcon.getBytes()));
-                event.setAppIconOriginalFilename(appIcon.getOriginalFilename());
+                try (InputStream in = appIcon.getInputStream()) {
+                    event.setAppIcon(blobStore.put(in));
+                }
             }
 
-            // Fire the pipeline — Step 1
-            kafkaProducerService.send(KafkaTopicConfig.TOPIC_ENV_CONFIG, event);
+            // Fire the pipeline — Step 0 records the event and creates the Flutter project.
+            // Nothing would ever pick up a project whose create record was lost: drop it and fail the request.
+            try {
+                kafkaProducerService.send(KafkaTopicConfig.TOPIC_CREATE, event);
+            } catch (RuntimeException e) {
+                projectRepository.deleteById(uniqueId);
+                throw e;
+            }
 
+            long end = System.currentTimeMillis();
             return new ProjectCreationMetaResponse(
                     new OrganisationDto(organisation),
                     new ProjectEntityDto(savedProject),
@@ -142,9 +187,105 @@ public class ProjectCreationService {
         }
     }
 
+    /**
+     * Runs a project's pipeline again from the given stage, with the event it
+     * was created with; stages before it keep their results. For projects that
+     * failed or ended up in the dead-letter topic once the cause is fixed.
+     */
+    public void replayPipeline(String projectId, PipelineStage from) {
+        ProjectCreationEventSample event = pipelineJoinService.rewind(projectId, from);
+        projectRepository.findById(projectId).ifPresent(project -> {
+            project.setStatus(switch (from) {
+                case CREATE -> "PENDING";
+                case FINALIZE -> "FINALIZING";
+                default -> "CONFIGURING";
+            });
+            projectRepository.save(project);
+        });
+        try {
+            kafkaProducerService.send(from.getTopic(), event);
+        } catch (RuntimeException e) {
+            // Not in the pipeline after all; it can be replayed again
+            projectRepository.findById(projectId).ifPresent(project -> {
+                project.setStatus("FAILED");
+                projectRepository.save(project);
+            });
+            throw e;
+        }
+    }
+
+    // Rejects what flutter create or the pipeline would only fail on later; IllegalArgumentException maps to 400
+    private void validateProjectRequest(String projectName, String organisationName, List<String> envKeys,
+                                        List<String> envValues, boolean requireFirebase, MultipartFile googleServicesJson) {
+        if (projectName == null || !PROJECT_NAME.matcher(projectName).matches() || DART_RESERVED_WORDS.contains(projectName)) {
+            throw new IllegalArgumentException(
+                    "projectName must be a valid Dart package name: lowercase letters, digits and underscores, starting with a letter");
+        }
+        if (organisationName == null || !ORG.matcher(organisationName).matches()) {
+            throw new IllegalArgumentException("organisationName must be a reverse domain such as com.example");
+        }
+        int keys = envKeys == null ? 0 : envKeys.size();
+        int values = envValues == null ? 0 : envValues.size();
+        if (keys != values) {
+            throw new IllegalArgumentException("envKeys and envValues must have the same number of entries");
+        }
+        if (requireFirebase && (googleServicesJson == null || googleServicesJson.isEmpty())) {
+            throw new IllegalArgumentException("googleServicesJson is required when requireFirebase is true");
+        }
+    }
 
-    private String sanitizeGeminiResponse(String response) {
+    /**
+     * First pipeline stage: creates the Flutter project on disk (pooled template,
+     * else flutter create) and links the project to its organisation.
+     */
+    public void createProjectFiles(ProjectCreationEventSample event) throws Exception {
+        Path projectRootPath = Paths.get(baseProjectsDir, event.getUniqueId());
+        Path flutterProjectDir = projectRootPath.resolve(event.getProjectName());
+        Files.createDirectories(projectRootPath);
+        // A redelivered event finds the project already there: it only ever appears complete, by a rename
+        if (!Files.isDirectory(flutterProjectDir)) {
+            stageProjectFiles(event, projectRootPath, flutterProjectDir);
+        }
+        Files.createDirectories(flutterProjectDir.resolve("assets"));
+
+        Optional<ProjectEntity> project = projectRepository.findById(event.getUniqueId());
+        Optional<OrganisationEntity> organisation = organisationRepository.findById(event.getOrganisationId());
+        if (project.isPresent() && organisation.isPresent()) {
+            List<ProjectEntity> projects = organisation.get().getProjects();
+            if (projects.stream().noneMatch(p -> event.getUniqueId().equals(p.getId()))) {
+                projects.add(project.get());
+                organisationRepository.save(organisation.get());
+            }
+        }
+    }
+
+    // Builds the project in a sibling directory and renames it into place, so a flutter create that was
+    // killed (timeout, crash) or a checkout that failed part way never leaves a tree a retry would accept
+    private void stageProjectFiles(ProjectCreationEventSample event, Path projectRootPath, Path flutterProjectDir) throws Exception {
+        // Left behind by an attempt that died before its cleanup
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(projectRootPath, STAGING_PREFIX + "*")) {
+            for (Path leftover : leftovers) {
+                FlutterTemplatePool.deleteRecursively(leftover);
+            }
+        }
+        Path staging = Files.createDirectory(projectRootPath.resolve(STAGING_PREFIX + UUID.randomUUID()));
+        try {
+            Path staged = staging.resolve(event.getProjectName());
+            if (!templatePool.checkout(staged, event.getProjectName(), event.getOrganisationName(), event.getDescription())) {
+                runFlutterCreate(event.getProjectName(), event.getOrganisationName(), event.getDescription(), staging);
+            }
+            Files.move(staged, flutterProjectDir, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FlutterTemplatePool.deleteRecursively(staging);
+        }
+    }
+
+    private String sanitizeGeminiResponse(String response) throws IOException {
         if (response == null) return "";
+        // Never write a failed call (circuit open, bulkhead full, API error) over a project file
+        if (response.startsWith("Error:")) {
+            throw new IOException("Gemini call failed, file left unchanged - " + response);
+        }
         // 1. Remove markdown code fences (e.g., ```yaml ... ```)
         String sanitized = response.replaceAll("(?s)```[a-zA-Z]*\n(.*?)\n```", "$1").trim();
         // 2. Remove common leading keywords (case-insensitive) followed by a newline.
@@ -166,25 +307,16 @@ public class ProjectCreationService {
 
     private void runFlutterCreate(String projectName, String orgName, String description, Path rootPath) throws Exception {
         try {
-            List<String> command = Arrays.asList(
-                    "C:\\flutter\\flutter\\bin\\flutter.bat", "create",
-                    "--org", orgName,
-                    "--project-name", projectName,
-                    "--description", description,
-                    projectName
-            );
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.directory(rootPath.toFile());
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            process.waitFor();
-        }catch (Exception e){
-            System.out.println("Error running flutter create: " + e.getMessage());
+            // Same shape as pooled templates: packages are resolved in the finalize stage
+            templatePool.flutterCreate(rootPath, projectName, orgName, description, false);
+        } catch (Exception e) {
             System.err.println("Error running flutter create: " + e.getMessage());
+            throw e;
         }
     }
 
-    public void configureDotEnv(Map<String, String> env, Path projectPath) throws IOException {
+    public void configureDotEnv(Map<String, String> env, Path projectPath, PubspecPatch pubspecPatch,
+                                MainDartPatch mainDartPatch) throws IOException {
         Path envFile = projectPath.resolve(".env");
         try (BufferedWriter writer = Files.newBufferedWriter(envFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
             for (Map.Entry<String, String> entry : env.entrySet()) {
@@ -192,119 +324,120 @@ public class ProjectCreationService {
                 writer.newLine();
             }
         }
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlFile = new String(Files.readAllBytes(pubspecPath));
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.DOTENV_PUBSPEC_PROMPT.replace("${yaml}", yamlFile));
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
-
-        Path mainFile = projectPath.resolve("lib").resolve("main.dart");
-        String mainContent = new String(Files.readAllBytes(mainFile));
-        String newMainResponse = geminiAIService.generateContent(
-                GeminiPrompts.MAIN_DOTENV_PROMPT.replace("${main}", mainContent));
-        Files.write(mainFile, sanitizeGeminiResponse(newMainResponse).getBytes());
-    }
 
-    public void configureAndroidPermissions(List<String> permissions, Path projectPath) throws IOException {
-        Path manifestPath = projectPath.resolve("android/app/src/main/AndroidManifest.xml");
-        String originalManifest = new String(Files.readAllBytes(manifestPath));
-        String newManifestResponse = geminiAIService.generateContent(
-                GeminiPrompts.ANDROID_PERMISSIONS_PROMPT
-                        .replace("${manifest}", originalManifest)
-                        .replace("${permissions}", String.join("\n", permissions))
-        );
-        Files.write(manifestPath, sanitizeGeminiResponse(newManifestResponse).getBytes());
-
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlContent = new String(Files.readAllBytes(pubspecPath));
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.PERM_HANDLER_PUBSPEC_PROMPT.replace("${yaml}", yamlContent));
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
+        // dotenv.load reads the asset bundle, which needs the binding
+        mainDartPatch.addImport("package:flutter_dotenv/flutter_dotenv.dart");
+        mainDartPatch.addStartStatement("WidgetsFlutterBinding.ensureInitialized();");
+        mainDartPatch.addStartStatement("await dotenv.load(fileName: \".env\");");
+        pubspecPatch.addDependency("flutter_dotenv", "^5.1.0");
+        pubspecPatch.addAsset(".env");
     }
 
-    private void configureAppIcon(MultipartFile appIcon, Path projectPath) throws Exception {
-        String originalFileName = Objects.requireNonNull(appIcon.getOriginalFilename());
-        // Ensure extension is preserved, default to .png if none
-        String extension = originalFileName.contains(".") ?
-                originalFileName.substring(originalFileName.lastIndexOf('.')) : ".png";
-        String iconFileName = "app_icon" + extension;
-        Path iconPath = projectPath.resolve("assets").resolve(iconFileName);
-
-        // Ensure assets directory exists
-        Files.createDirectories(projectPath.resolve("assets"));
-        Files.copy(appIcon.getInputStream(), iconPath, StandardCopyOption.REPLACE_EXISTING);
-
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlContent = new String(Files.readAllBytes(pubspecPath));
-
-        // Using the new, more robust prompt
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.FLUTTER_LAUNCHER_ICON_PROMPT
-                        .replace("${yaml}", yamlContent)
-                        .replace("${iconPath}", "assets/" + iconFileName)); // Use relative path
-
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
-        runFlutterLauncherIcons(projectPath);
+    public void configureAndroidPermissions(List<String> permissions, Path projectPath, PubspecPatch pubspecPatch,
+                                            GeminiCallContext callContext) throws IOException {
+        applyEdits(projectPath, List.of(new ProjectFileEdit("android/app/src/main/AndroidManifest.xml",
+                manifest -> AndroidManifestEditor.addPermissions(manifest, permissions),
+                GeminiPrompts.ANDROID_PERMISSIONS_EDIT.replace("${permissions}", String.join("\n", permissions)))), callContext);
+        pubspecPatch.addDependency("permission_handler", "^11.0.1");
     }
 
-    private void runFlutterLauncherIcons(Path projectPath) throws Exception {
-        List<String> cmd = Arrays.asList("C:\\flutter\\flutter\\bin\\flutter.bat", "run", "flutter_launcher_icons");
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.directory(projectPath.toFile());
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-        p.waitFor();
+    /**
+     * Applies the pubspec.yaml and main.dart changes the pipeline stages collected,
+     * in one edit per file (one batched Gemini call only for files that can't be
+     * edited locally), then runs pub get once.
+     */
+    public void applyPatches(PubspecPatch pubspecPatch, MainDartPatch mainDartPatch, Path projectPath,
+                             GeminiCallContext callContext) throws Exception {
+        List<ProjectFileEdit> edits = new ArrayList<>();
+        if (pubspecPatch != null && pubspecPatch.hasChanges()) {
+            String instruction = GeminiPrompts.PUBSPEC_PATCH_EDIT
+                    .replace("${dependencies}", yamlEntries(pubspecPatch.getDependencies()))
+                    .replace("${devDependencies}", yamlEntries(pubspecPatch.getDevDependencies()))
+                    .replace("${assets}", pubspecPatch.getAssets().stream().map(asset -> "- " + asset).collect(Collectors.joining("\n")));
+            edits.add(new ProjectFileEdit("pubspec.yaml", yaml -> {
+                PubspecEditor pubspec = new PubspecEditor(yaml);
+                for (Map.Entry<String, String> dependency : pubspecPatch.getDependencies().entrySet()) {
+                    pubspec.addDependency("dependencies", dependency.getKey(), dependency.getValue());
+                }
+                for (Map.Entry<String, String> dependency : pubspecPatch.getDevDependencies().entrySet()) {
+                    pubspec.addDependency("dev_dependencies", dependency.getKey(), dependency.getValue());
+                }
+                for (String asset : pubspecPatch.getAssets()) {
+                    pubspec.addAsset(asset);
+                }
+                return pubspec.toString();
+            }, instruction));
+        }
+        if (mainDartPatch != null && mainDartPatch.hasChanges()) {
+            String instruction = GeminiPrompts.MAIN_DART_PATCH_EDIT
+                    .replace("${imports}", mainDartPatch.getImports().stream()
+                            .map(uri -> "import '" + uri + "';").collect(Collectors.joining("\n")))
+                    .replace("${statements}", String.join("\n", mainDartPatch.getStartStatements()));
+            edits.add(new ProjectFileEdit("lib/main.dart", dart -> {
+                String edited = dart;
+                for (String importUri : mainDartPatch.getImports()) {
+                    edited = MainDartEditor.addImport(edited, importUri);
+                }
+                return MainDartEditor.addToMainStart(edited, mainDartPatch.getStartStatements());
+            }, instruction));
+        }
+        if (edits.isEmpty()) {
+            return;
+        }
+        applyEdits(projectPath, edits, callContext);
+
+        if (pubspecPatch != null && pubspecPatch.hasChanges()) {
+            runFlutterPubGet(projectPath);
+        }
     }
 
-    private void configureFirebase(MultipartFile googleServices, Path projectPath) throws IOException {
-        Path gsJsonPath = projectPath.resolve("android/app/google-services.json");
-        Files.copy(googleServices.getInputStream(), gsJsonPath, StandardCopyOption.REPLACE_EXISTING);
+    private static String yamlEntries(Map<String, String> entries) {
+        return entries.entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + entry.getValue())
+                .collect(Collectors.joining("\n"));
+    }
 
-        // --- DYNAMICALLY CONFIGURE GRADLE FILES ---
+    /**
+     * Applies a stage's edits with the local structure-aware editors. A file they
+     * can't handle goes to Gemini with all of its instructions, in one batched call
+     * for the whole stage. Nothing is written unless every file was edited.
+     */
+    private void applyEdits(Path projectPath, List<ProjectFileEdit> edits, GeminiCallContext callContext) throws IOException {
+        Map<String, List<ProjectFileEdit>> editsByFile = new LinkedHashMap<>();
+        for (ProjectFileEdit edit : edits) {
+            editsByFile.computeIfAbsent(edit.path(), path -> new ArrayList<>()).add(edit);
+        }
 
-        // 1. Configure Root Gradle File
-        Path rootGradlePath = findGradleFile(projectPath.resolve("android"), "build");
-        if (rootGradlePath != null) {
-            String rootGradleContent = new String(Files.readAllBytes(rootGradlePath));
-            String prompt = rootGradlePath.toString().endsWith(".kts")
-                    ? GeminiPrompts.FIREBASE_ROOT_GRADLE_KTS_PROMPT
-                    : GeminiPrompts.FIREBASE_ROOT_GRADLE_PROMPT;
+        Map<String, String> updated = new LinkedHashMap<>();
+        List<GeminiFileEdit> fallback = new ArrayList<>();
+        for (Map.Entry<String, List<ProjectFileEdit>> entry : editsByFile.entrySet()) {
+            String content = Files.readString(projectPath.resolve(entry.getKey()));
+            try {
+                String edited = content;
+                for (ProjectFileEdit edit : entry.getValue()) {
+                    edited = edit.local().apply(edited);
+                }
+                updated.put(entry.getKey(), edited);
+            } catch (LocalEditException e) {
+                System.out.println("[EDIT] " + entry.getKey() + " not editable locally (" + e.getMessage() + "), using Gemini");
+                fallback.add(new GeminiFileEdit(entry.getKey(), content,
+                        entry.getValue().stream().map(ProjectFileEdit::geminiInstruction).toList()));
+            }
+        }
 
-            String newRootGradleResponse = geminiAIService.generateContent(
-                    prompt.replace("${gradle}", rootGradleContent));
-            Files.write(rootGradlePath, sanitizeGeminiResponse(newRootGradleResponse).getBytes());
-        } else {
-            System.err.println("Warning: Root build.gradle or build.gradle.kts not found.");
+        if (!fallback.isEmpty()) {
+            Map<String, String> generated = geminiAIService.editFiles(fallback, callContext);
+            for (GeminiFileEdit edit : fallback) {
+                updated.put(edit.getPath(), sanitizeGeminiResponse(generated.get(edit.getPath())));
+            }
+        }
+        for (Map.Entry<String, String> entry : updated.entrySet()) {
+            Files.writeString(projectPath.resolve(entry.getKey()), entry.getValue());
         }
+    }
 
-        // 2. Configure App-level Gradle File
-        Path appGradlePath = findGradleFile(projectPath.resolve("android/app"), "build");
-        if (appGradlePath != null) {
-            String appGradleContent = new String(Files.readAllBytes(appGradlePath));
-            String prompt = appGradlePath.toString().endsWith(".kts")
-                    ? GeminiPrompts.FIREBASE_APP_GRADLE_KTS_PROMPT
-                    : GeminiPrompts.FIREBASE_APP_GRADLE_PROMPT;
-
-            String newAppGradleResponse = geminiAIService.generateContent(
-                    prompt.replace("${gradle}", appGradleContent));
-            Files.write(appGradlePath, sanitizeGeminiResponse(newAppGradleResponse).getBytes());
-        } else {
-            System.err.println("Warning: App-level build.gradle or build.gradle.kts not found.");
-        }
-
-
-        // --- Configure pubspec.yaml and main.dart (no changes here) ---
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlContent = new String(Files.readAllBytes(pubspecPath));
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.FIREBASE_PUBSPEC_PROMPT.replace("${yaml}", yamlContent));
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
-
-        Path mainFile = projectPath.resolve("lib").resolve("main.dart");
-        String mainContent = new String(Files.readAllBytes(mainFile));
-        String newMainResponse = geminiAIService.generateContent(
-                GeminiPrompts.FIREBASE_MAIN_PROMPT.replace("${main}", mainContent));
-        Files.write(mainFile, sanitizeGeminiResponse(newMainResponse).getBytes());
+    private void runFlutterPubGet(Path projectPath) throws Exception {
+        flutter.run(List.of("pub", "get"), projectPath);
     }
 
     private Path findGradleFile(Path directory, String baseName) {
@@ -319,38 +452,6 @@ public class ProjectCreationService {
         return null; // Neither file found
     }
 
-    private boolean checkProjectPackageMatchesGoogleServices(MultipartFile googleServices, Path projectPath) {
-        try {
-            // 1. Extract package name from google-services.json
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(googleServices.getInputStream());
-            String googleJsonPackage = root.path("client").get(0)
-                    .path("client_info")
-                    .path("android_client_info")
-                    .path("package_name").asText(null);
-
-            if (googleJsonPackage == null) {
-                System.err.println("Could not find 'package_name' in google-services.json");
-                return false;
-            }
-
-            // 2. Extract applicationId from build.gradle or build.gradle.kts
-            String gradlePackage = extractApplicationIdFromGradle(projectPath);
-
-            if (gradlePackage == null) {
-                System.err.println("Could not find 'applicationId' in app-level build.gradle file.");
-                return false;
-            }
-
-            System.out.println("Comparing packages -> JSON: " + googleJsonPackage + ", Gradle: " + gradlePackage);
-            return googleJsonPackage.equals(gradlePackage);
-
-        } catch (IOException e) {
-            System.err.println("Failed to read or parse files for package name validation: " + e.getMessage());
-            return false;
-        }
-    }
-
     private String extractApplicationIdFromGradle(Path projectPath) throws IOException {
         Path gradlePath = projectPath.resolve("android/app/build.gradle");
         if (!Files.exists(gradlePath)) {
@@ -370,95 +471,80 @@ public class ProjectCreationService {
     }
 
     public void zipFolder(Path sourceFolderPath, Path zipPath) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(zipPath.toFile());
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ZipOutputStream zos = new ZipOutputStream(bos)) {
-            Files.walk(sourceFolderPath)
-                    .filter(path -> !Files.isDirectory(path))
-                    .forEach(path -> {
-                        ZipEntry zipEntry = new ZipEntry(sourceFolderPath.relativize(path).toString().replace("\\", "/"));
-                        try {
-                            zos.putNextEntry(zipEntry);
-                            Files.copy(path, zos);
-                            zos.closeEntry();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
-        }
+        projectZipper.zip(sourceFolderPath, zipPath);
     }
 
     /**
-     * Called from Kafka consumer — accepts raw bytes instead of MultipartFile.
+     * Packages a finished project for download and returns where it is served
+     * from: its zip if projects.zip.on-finalize is set, otherwise the project
+     * directory itself, which the download endpoint zips as it streams.
      */
-    public void configureAppIconFromBase64(String base64Data, String originalFilename, Path projectPath) throws Exception {
-        byte[] iconBytes = Base64.getDecoder().decode(base64Data);
-
-        String extension = (originalFilename != null && originalFilename.contains("."))
-                ? originalFilename.substring(originalFilename.lastIndexOf('.'))
-                : ".png";
-        String iconFileName = "app_icon" + extension;
-        Path iconPath = projectPath.resolve("assets").resolve(iconFileName);
-
-        Files.createDirectories(projectPath.resolve("assets"));
-        Files.write(iconPath, iconBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlContent = new String(Files.readAllBytes(pubspecPath));
-
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.FLUTTER_LAUNCHER_ICON_PROMPT
-                        .replace("${yaml}", yamlContent)
-                        .replace("${iconPath}", "assets/" + iconFileName));
+    public Path packageProject(String projectId) throws IOException {
+        Path projectRootPath = Paths.get(baseProjectsDir, projectId);
+        if (!zipOnFinalize) {
+            return projectRootPath;
+        }
+        Path zipPath = Paths.get(baseProjectsDir, projectId + ".zip");
+        zipFolder(projectRootPath, zipPath);
+        return zipPath;
+    }
 
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
-        runFlutterLauncherIcons(projectPath);
+    /**
+     * Called from Kafka consumer — renders the launcher icons from the uploaded image in the blob store.
+     */
+    public void configureAppIconFromBlob(BlobRef appIcon, Path projectPath) throws IOException {
+        try (InputStream in = blobStore.open(appIcon)) {
+            launcherIconGenerator.generate(in, projectPath);
+        }
     }
 
     /**
      * Firebase config from raw bytes instead of MultipartFile.
      */
-    public void configureFirebaseFromBytes(byte[] googleServicesBytes, Path projectPath) throws IOException {
+    public void configureFirebaseFromBytes(byte[] googleServicesBytes, Path projectPath, PubspecPatch pubspecPatch,
+                                           MainDartPatch mainDartPatch, GeminiCallContext callContext) throws IOException {
         Path gsJsonPath = projectPath.resolve("android/app/google-services.json");
         Files.write(gsJsonPath, googleServicesBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
-        // Root Gradle
+        // Gradle files; any fallbacks go to Gemini in a single batched call
+        List<ProjectFileEdit> edits = new ArrayList<>();
         Path rootGradlePath = findGradleFile(projectPath.resolve("android"), "build");
         if (rootGradlePath != null) {
-            String rootGradleContent = new String(Files.readAllBytes(rootGradlePath));
-            String prompt = rootGradlePath.toString().endsWith(".kts")
-                    ? GeminiPrompts.FIREBASE_ROOT_GRADLE_KTS_PROMPT
-                    : GeminiPrompts.FIREBASE_ROOT_GRADLE_PROMPT;
-            String newRootGradleResponse = geminiAIService.generateContent(
-                    prompt.replace("${gradle}", rootGradleContent));
-            Files.write(rootGradlePath, sanitizeGeminiResponse(newRootGradleResponse).getBytes());
+            String path = projectPath.relativize(rootGradlePath).toString().replace('\\', '/');
+            edits.add(rootGradlePath.toString().endsWith(".kts")
+                    ? new ProjectFileEdit(path, gradle -> GradleEditor.addToBlock(gradle, List.of("plugins"),
+                            "alias(libs.plugins.google.gms.google.services) apply false", "google.gms.google.services"),
+                            GeminiPrompts.FIREBASE_ROOT_GRADLE_KTS_EDIT)
+                    : new ProjectFileEdit(path, gradle -> GradleEditor.addToBlock(gradle, List.of("buildscript", "dependencies"),
+                            "classpath 'com.google.gms:google-services:4.4.1'", "com.google.gms:google-services"),
+                            GeminiPrompts.FIREBASE_ROOT_GRADLE_EDIT));
         }
-
-        // App Gradle
         Path appGradlePath = findGradleFile(projectPath.resolve("android/app"), "build");
         if (appGradlePath != null) {
-            String appGradleContent = new String(Files.readAllBytes(appGradlePath));
-            String prompt = appGradlePath.toString().endsWith(".kts")
-                    ? GeminiPrompts.FIREBASE_APP_GRADLE_KTS_PROMPT
-                    : GeminiPrompts.FIREBASE_APP_GRADLE_PROMPT;
-            String newAppGradleResponse = geminiAIService.generateContent(
-                    prompt.replace("${gradle}", appGradleContent));
-            Files.write(appGradlePath, sanitizeGeminiResponse(newAppGradleResponse).getBytes());
-        }
-
-        // pubspec.yaml
-        Path pubspecPath = projectPath.resolve("pubspec.yaml");
-        String yamlContent = new String(Files.readAllBytes(pubspecPath));
-        String newYamlResponse = geminiAIService.generateContent(
-                GeminiPrompts.FIREBASE_PUBSPEC_PROMPT.replace("${yaml}", yamlContent));
-        Files.write(pubspecPath, sanitizeGeminiResponse(newYamlResponse).getBytes());
-
-        // main.dart
-        Path mainFile = projectPath.resolve("lib").resolve("main.dart");
-        String mainContent = new String(Files.readAllBytes(mainFile));
-        String newMainResponse = geminiAIService.generateContent(
-                GeminiPrompts.FIREBASE_MAIN_PROMPT.replace("${main}", mainContent));
-        Files.write(mainFile, sanitizeGeminiResponse(newMainResponse).getBytes());
+            String path = projectPath.relativize(appGradlePath).toString().replace('\\', '/');
+            edits.add(appGradlePath.toString().endsWith(".kts")
+                    ? new ProjectFileEdit(path, gradle -> {
+                        String edited = GradleEditor.addToBlock(gradle, List.of("plugins"),
+                                "alias(libs.plugins.google.gms.google.services)", "google.gms.google.services");
+                        edited = GradleEditor.addDependency(edited, "implementation(platform(libs.firebase.bom))", "firebase.bom");
+                        return GradleEditor.addDependency(edited, "implementation(libs.firebase.analytics)", "firebase.analytics");
+                    }, GeminiPrompts.FIREBASE_APP_GRADLE_KTS_EDIT)
+                    : new ProjectFileEdit(path, gradle -> {
+                        String edited = GradleEditor.addApplyPlugin(gradle,
+                                "apply plugin: 'com.google.gms.google-services'", "com.google.gms.google-services");
+                        edited = GradleEditor.addDependency(edited,
+                                "implementation platform('com.google.firebase:firebase-bom:33.1.2')", "firebase-bom");
+                        return GradleEditor.addDependency(edited,
+                                "implementation 'com.google.firebase:firebase-analytics'", "firebase-analytics");
+                    }, GeminiPrompts.FIREBASE_APP_GRADLE_EDIT));
+        }
+        if (!edits.isEmpty()) {
+            applyEdits(projectPath, edits, callContext);
+        }
+        mainDartPatch.addImport("package:firebase_core/firebase_core.dart");
+        mainDartPatch.addStartStatement("WidgetsFlutterBinding.ensureInitialized();");
+        mainDartPatch.addStartStatement("await Firebase.initializeApp();");
+        pubspecPatch.addDependency("firebase_core", "^3.0.0");
     }
 
     /**
@@ -0,0 +1,243 @@
+package com.flutomapp.app.service;
+
+import com.flutomapp.app.kafka.MainDartPatch;
+import com.flutomapp.app.kafka.PipelineStage;
+import com.flutomapp.app.kafka.ProjectCreationEventSample;
+import com.flutomapp.app.kafka.PubspecPatch;
+import com.flutomapp.app.model.ProjectPipelineState;
+import com.flutomapp.app.model.ProjectPipelineState.StageResult;
+import com.mongodb.client.result.UpdateResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Progress of each project through the pipeline. Stages check isDone before
+ * working, so a redelivered or retried message skips work that already
+ * happened. It is also the fan-in for the parallel configuration stages: the
+ * create stage opens a join with the stages it fanned out to; each stage
+ * records its result with an atomic per-stage $set, and the stage whose result
+ * completes the set claims the finalize dispatch with a conditional update, so
+ * finalize is sent exactly once even when stages finish together or are
+ * redelivered. A claim whose send fails is given back (unclaimFinalize), so the
+ * retried stage can dispatch again.
+ *
+ * It also records which node admitted each project (pipeline.node-id, the host
+ * name by default) until the project is finalized or dead-lettered, which is
+ * what PipelineBackpressure counts as this node's projects in flight.
+ */
+@Service
+public class ProjectPipelineJoinService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectPipelineJoinService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final String nodeId;
+
+    public ProjectPipelineJoinService(MongoTemplate mongoTemplate,
+                                      @Value("${pipeline.node-id:}") String nodeId) {
+        this.mongoTemplate = mongoTemplate;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    /**
+     * Records the event a project's pipeline starts with, so any stage can be
+     * replayed later, and admits the project to this node. The first thing the
+     * create stage does; a redelivery keeps the event already recorded, and does
+     * not admit a project that was already finalized again.
+     */
+    public void start(ProjectCreationEventSample event) {
+        Update update = new Update()
+                .setOnInsert("event", event)
+                .setOnInsert("finalizeDispatched", false)
+                .setOnInsert("createdAt", LocalDateTime.now());
+        mongoTemplate.upsert(query(where("id").is(event.getUniqueId())), update, ProjectPipelineState.class);
+        mongoTemplate.updateFirst(query(where("id").is(event.getUniqueId()).and("finalizedAt").exists(false)),
+                new Update().set("admittedBy", nodeId).set("admittedAt", LocalDateTime.now()).unset("releasedAt"),
+                ProjectPipelineState.class);
+    }
+
+    /**
+     * Marks the create stage done and starts waiting for the given stages. A
+     * redelivered create keeps whatever stages already completed.
+     */
+    public void open(String projectId, List<PipelineStage> stages) {
+        Update update = new Update()
+                .set("expectedStages", stages.stream().map(Enum::name).toList())
+                .set("filesCreatedAt", LocalDateTime.now())
+                .setOnInsert("finalizeDispatched", false)
+                .setOnInsert("createdAt", LocalDateTime.now());
+        mongoTemplate.upsert(query(where("id").is(projectId)), update, ProjectPipelineState.class);
+    }
+
+    public boolean isDone(String projectId, PipelineStage stage) {
+        ProjectPipelineState state = mongoTemplate.findById(projectId, ProjectPipelineState.class);
+        if (state == null) {
+            return false;
+        }
+        return switch (stage) {
+            case CREATE -> state.getFilesCreatedAt() != null;
+            case FINALIZE -> state.getFinalizedAt() != null;
+            default -> state.getCompletedStages().containsKey(stage.name());
+        };
+    }
+
+    public void markFinalized(String projectId) {
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.updateFirst(query(where("id").is(projectId)),
+                new Update().set("finalizedAt", now).set("releasedAt", now), ProjectPipelineState.class);
+    }
+
+    /**
+     * Stops counting a project that left the pipeline without finishing (dead-lettered)
+     * against the node that admitted it.
+     */
+    public void release(String projectId) {
+        mongoTemplate.updateFirst(query(where("id").is(projectId)),
+                new Update().set("releasedAt", LocalDateTime.now()), ProjectPipelineState.class);
+    }
+
+    /**
+     * Ids of the projects this node admitted that are still in the pipeline.
+     * Admissions older than maxAge are left out, so a project abandoned without
+     * a release (its records lost with a crashed node) doesn't hold a slot forever.
+     */
+    public Set<String> admittedProjects(Duration maxAge) {
+        return new HashSet<>(mongoTemplate.findDistinct(
+                query(where("admittedBy").is(nodeId)
+                        .and("releasedAt").exists(false)
+                        .and("admittedAt").gt(LocalDateTime.now().minus(maxAge))),
+                "id", ProjectPipelineState.class, String.class));
+    }
+
+    /**
+     * Records a stage's result. Returns the event to finalize with (every stage's
+     * flags and patches merged) if this call completed the join, otherwise empty.
+     */
+    public Optional<ProjectCreationEventSample> complete(ProjectCreationEventSample event, PipelineStage stage, boolean configured) {
+        StageResult result = new StageResult(configured, event.getPubspecPatch(), event.getMainDartPatch(), LocalDateTime.now());
+        // The first result of a stage wins; a redelivery must not replace it with an emptier one
+        ProjectPipelineState state = mongoTemplate.findAndModify(
+                query(where("id").is(event.getUniqueId()).and("completedStages." + stage.name()).exists(false)),
+                new Update().set("completedStages." + stage.name(), result),
+                FindAndModifyOptions.options().returnNew(true),
+                ProjectPipelineState.class);
+        if (state == null) {
+            state = mongoTemplate.findById(event.getUniqueId(), ProjectPipelineState.class);
+        }
+        if (state == null) {
+            logger.warn("No pipeline join for project {}, {} result dropped", event.getUniqueId(), stage);
+            return Optional.empty();
+        }
+        if (!state.getCompletedStages().keySet().containsAll(state.getExpectedStages())) {
+            return Optional.empty();
+        }
+
+        UpdateResult claimed = mongoTemplate.updateFirst(
+                query(where("id").is(event.getUniqueId()).and("finalizeDispatched").is(false)),
+                new Update().set("finalizeDispatched", true),
+                ProjectPipelineState.class);
+        if (claimed.getModifiedCount() == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(merge(event, state));
+    }
+
+    /**
+     * Gives back a finalize dispatch claimed by complete whose send failed, so
+     * the next completion of the join (the stage's retry) claims it again.
+     */
+    public void unclaimFinalize(String projectId) {
+        mongoTemplate.updateFirst(query(where("id").is(projectId)),
+                new Update().set("finalizeDispatched", false), ProjectPipelineState.class);
+    }
+
+    /**
+     * Rewinds a project so its pipeline runs again from the given stage, and
+     * returns the event to send to that stage's topic. From CREATE everything
+     * reruns; from a configuration stage only that stage reruns, and its
+     * completion dispatches finalize again; from FINALIZE the recorded stage
+     * results are applied again.
+     */
+    public ProjectCreationEventSample rewind(String projectId, PipelineStage from) {
+        ProjectPipelineState state = mongoTemplate.findById(projectId, ProjectPipelineState.class);
+        if (state == null || state.getEvent() == null) {
+            throw new IllegalArgumentException("No pipeline recorded for project " + projectId);
+        }
+        // Back in flight, on the node that admitted it
+        Update update = new Update().unset("finalizedAt").unset("releasedAt");
+        switch (from) {
+            case CREATE -> update.unset("filesCreatedAt")
+                    .unset("completedStages")
+                    .set("expectedStages", List.of())
+                    .set("finalizeDispatched", false);
+            case FINALIZE -> {
+                if (state.getFilesCreatedAt() == null
+                        || !state.getCompletedStages().keySet().containsAll(state.getExpectedStages())) {
+                    throw new IllegalArgumentException("Project " + projectId + " has stages that have not completed; replay one of those instead");
+                }
+                update.set("finalizeDispatched", true);
+            }
+            default -> {
+                if (!state.getExpectedStages().contains(from.name())) {
+                    throw new IllegalArgumentException(from + " is not a stage of project " + projectId);
+                }
+                update.unset("completedStages." + from.name()).set("finalizeDispatched", false);
+            }
+        }
+        mongoTemplate.updateFirst(query(where("id").is(projectId)), update, ProjectPipelineState.class);
+        return from == PipelineStage.FINALIZE ? merge(state.getEvent(), state) : state.getEvent();
+    }
+
+    // The finalize event: this stage's copy of the event with everyone's results
+    private ProjectCreationEventSample merge(ProjectCreationEventSample event, ProjectPipelineState state) {
+        PubspecPatch pubspecPatch = new PubspecPatch();
+        MainDartPatch mainDartPatch = new MainDartPatch();
+        for (PipelineStage stage : PipelineStage.CONFIG_STAGES) {
+            StageResult result = state.getCompletedStages().get(stage.name());
+            if (result == null) {
+                continue;
+            }
+            pubspecPatch.merge(result.getPubspecPatch());
+            mainDartPatch.merge(result.getMainDartPatch());
+            switch (stage) {
+                case ENV -> event.setEnvConfigured(result.isConfigured());
+                case PERMISSIONS -> event.setPermissionsConfigured(result.isConfigured());
+                case APP_ICON -> event.setAppIconConfigured(result.isConfigured());
+                case FIREBASE -> event.setFirebaseConfigured(result.isConfigured());
+                default -> {
+                }
+            }
+        }
+        event.setPubspecPatch(pubspecPatch);
+        event.setMainDartPatch(mainDartPatch);
+        return event;
+    }
+
+    private static String defaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            String id = UUID.randomUUID().toString();
+            logger.warn("Could not resolve the host name, using node id {}; set pipeline.node-id", id);
+            return id;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.flutomapp.app.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Zips project directories for download.
+ *
+ * Generated and cache directories (build/, .dart_tool/, .gradle/ and the like,
+ * projects.zip.exclude-dirs) and machine-specific files (projects.zip.exclude-files)
+ * are left out: they are large and the recipient's tooling regenerates them.
+ * Formats that are already compressed (PNG, JPEG, jars...) are stored rather
+ * than deflated again. Entries are deflated in parallel into per-thread scatter
+ * files and then copied into the archive in one pass, so the output can be any
+ * stream, including an HTTP response.
+ */
+@Component
+public class ProjectZipper {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectZipper.class);
+
+    private static final Set<String> STORED_EXTENSIONS = Set.of(
+            "png", "jpg", "jpeg", "gif", "webp", "ico",
+            "zip", "jar", "aar", "apk", "aab", "gz", "tgz", "xz", "7z",
+            "mp3", "mp4", "m4a", "ogg", "webm", "woff", "woff2");
+
+    private final Set<String> excludedDirectories;
+    private final Set<String> excludedFiles;
+    private final int threads;
+    private final int level;
+    private final MeterRegistry registry;
+
+    public ProjectZipper(@Value("${projects.zip.exclude-dirs:build,.dart_tool,.gradle,.idea,.cxx,.symlinks,Pods,ephemeral}") List<String> excludedDirectories,
+                         @Value("${projects.zip.exclude-files:local.properties,.flutter-plugins,.flutter-plugins-dependencies}") List<String> excludedFiles,
+                         @Value("${projects.zip.threads:0}") int threads,
+                         @Value("${projects.zip.level:6}") int level,
+                         MeterRegistry registry) {
+        this.excludedDirectories = Set.copyOf(excludedDirectories);
+        this.excludedFiles = Set.copyOf(excludedFiles);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.level = level;
+        this.registry = registry;
+    }
+
+    public record ZipReport(int files, int stored, int skipped, long sourceBytes, long zipBytes, long millis) {
+    }
+
+    /**
+     * Zips sourceDir into zipFile, replacing it. The archive is written next to
+     * it and renamed into place, so a download never sees a partial zip.
+     */
+    public ZipReport zip(Path sourceDir, Path zipFile) throws IOException {
+        Path temp = Files.createTempFile(zipFile.toAbsolutePath().getParent(), zipFile.getFileName().toString(), ".tmp");
+        try {
+            ZipReport report;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                report = zip(sourceDir, out, "file");
+            }
+            Files.move(temp, zipFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return report;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the zip of sourceDir to out, which is flushed but not closed.
+     */
+    public ZipReport zip(Path sourceDir, OutputStream out) throws IOException {
+        return zip(sourceDir, out, "stream");
+    }
+
+    private ZipReport zip(Path sourceDir, OutputStream out, String target) throws IOException {
+        long start = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        int[] skipped = {0};
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(sourceDir) && excludedDirectories.contains(dir.getFileName().toString())) {
+                    skipped[0]++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || excludedFiles.contains(file.getFileName().toString())) {
+                    skipped[0]++;
+                } else {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "project-zip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor,
+                () -> new FileBasedScatterGatherBackingStore(Files.createTempFile("project-zip-", ".scatter").toFile()),
+                level);
+        int stored = 0;
+        long sourceBytes = 0;
+        CountingOutputStream counting = new CountingOutputStream(out);
+        try {
+            for (Path file : files) {
+                ZipArchiveEntry entry = new ZipArchiveEntry(sourceDir.relativize(file).toString().replace('\\', '/'));
+                entry.setTime(Files.getLastModifiedTime(file).toMillis());
+                if (STORED_EXTENSIONS.contains(extension(file))) {
+                    entry.setMethod(ZipEntry.STORED);
+                    stored++;
+                } else {
+                    entry.setMethod(ZipEntry.DEFLATED);
+                }
+                sourceBytes += Files.size(file);
+                creator.addArchiveEntry(entry, () -> {
+                    try {
+                        return Files.newInputStream(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(counting)) {
+                creator.writeTo(zip);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while zipping " + sourceDir, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io
+                    : e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause()
+                    : new IOException("Zipping " + sourceDir + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long nanos = System.nanoTime() - start;
+        Timer.builder("projects.zip.duration")
+                .tag("target", target)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("projects.zip.size")
+                .baseUnit("bytes")
+                .tag("target", target)
+                .register(registry)
+                .record(counting.count);
+        ZipReport report = new ZipReport(files.size(), stored, skipped[0], sourceBytes, counting.count,
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+        logger.info("Zipped {} ({}): {} files ({} stored), {} skipped, {} -> {} bytes in {} ms",
+                sourceDir, target, report.files(), report.stored(), report.skipped(), report.sourceBytes(),
+                report.zipBytes(), report.millis());
+        return report;
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // Doesn't close the wrapped stream: the caller owns it
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.flutomapp.app.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalEditorsTests {
+
+	private static final String PUBSPEC = """
+			name: demo
+			description: A new Flutter project.
+
+			dependencies:
+			  flutter:
+			    sdk: flutter
+			  cupertino_icons: ^1.0.8
+
+			dev_dependencies:
+			  flutter_test:
+			    sdk: flutter
+
+			# The following section is specific to Flutter packages.
+			flutter:
+			  uses-material-design: true
+			  # To add assets to your application, add an assets section, like this:
+			  # assets:
+			  #   - images/a_dot_burr.jpeg
+			""";
+
+	@Test
+	void pubspecEditsKeepEverythingElse() throws Exception {
+		PubspecEditor pubspec = new PubspecEditor(PUBSPEC);
+		assertTrue(pubspec.addDependency("dependencies", "flutter_dotenv", "^5.1.0"));
+		assertTrue(pubspec.addAsset(".env"));
+		assertTrue(pubspec.addAsset("assets/"));
+
+		assertEquals("""
+				name: demo
+				description: A new Flutter project.
+
+				dependencies:
+				  flutter:
+				    sdk: flutter
+				  cupertino_icons: ^1.0.8
+				  flutter_dotenv: ^5.1.0
+
+				dev_dependencies:
+				  flutter_test:
+				    sdk: flutter
+
+				# The following section is specific to Flutter packages.
+				flutter:
+				  uses-material-design: true
+				  assets:
+				    - .env
+				    - assets/
+				  # To add assets to your application, add an assets section, like this:
+				  # assets:
+				  #   - images/a_dot_burr.jpeg
+				""", pubspec.toString());
+	}
+
+	@Test
+	void pubspecEditsAreIdempotent() throws Exception {
+		PubspecEditor pubspec = new PubspecEditor(PUBSPEC);
+		pubspec.addDependency("dependencies", "flutter_dotenv", "^5.1.0");
+		pubspec.addAsset(".env");
+		String once = pubspec.toString();
+
+		PubspecEditor again = new PubspecEditor(once);
+		assertFalse(again.addDependency("dependencies", "flutter_dotenv", "^6.0.0"));
+		assertFalse(again.addAsset(".env"));
+		assertEquals(once, again.toString());
+	}
+
+	@Test
+	void pubspecFlowStyleFallsBack() throws Exception {
+		PubspecEditor pubspec = new PubspecEditor("name: demo\ndependencies: {flutter: {sdk: flutter}}\n");
+		assertThrows(LocalEditException.class, () -> pubspec.addDependency("dependencies", "firebase_core", "^3.0.0"));
+	}
+
+	@Test
+	void manifestPermissionsGoBeforeApplication() throws Exception {
+		String manifest = """
+				<manifest xmlns:android="http://schemas.android.com/apk/res/android">
+				    <uses-permission android:name="android.permission.INTERNET"/>
+				    <application
+				        android:label="demo">
+				    </application>
+				</manifest>
+				""";
+		String edited = AndroidManifestEditor.addPermissions(manifest, List.of("INTERNET", "CAMERA"));
+		assertEquals("""
+				<manifest xmlns:android="http://schemas.android.com/apk/res/android">
+				    <uses-permission android:name="android.permission.INTERNET"/>
+				    <uses-permission android:name="android.permission.CAMERA" />
+				    <application
+				        android:label="demo">
+				    </application>
+				</manifest>
+				""", edited);
+	}
+
+	@Test
+	void gradleEditsTargetTheRightBlock() throws Exception {
+		String root = """
+				buildscript {
+				    repositories { google() }
+				    dependencies {
+				        classpath 'com.android.tools.build:gradle:8.1.0' // "}" in a comment
+				    }
+				}
+				""";
+		String edited = GradleEditor.addToBlock(root, List.of("buildscript", "dependencies"),
+				"classpath 'com.google.gms:google-services:4.4.1'", "com.google.gms:google-services");
+		assertTrue(edited.contains("""
+				        classpath 'com.android.tools.build:gradle:8.1.0' // "}" in a comment
+				        classpath 'com.google.gms:google-services:4.4.1'
+				    }
+				}
+				"""));
+		assertEquals(edited, GradleEditor.addToBlock(edited, List.of("buildscript", "dependencies"),
+				"classpath 'com.google.gms:google-services:4.4.1'", "com.google.gms:google-services"));
+
+		String app = """
+				plugins {
+				    id "com.android.application"
+				}
+
+				android {
+				    dependencies {
+				    }
+				}
+				""";
+		String withPlugin = GradleEditor.addApplyPlugin(app, "apply plugin: 'com.google.gms.google-services'",
+				"com.google.gms.google-services");
+		String withDependency = GradleEditor.addDependency(withPlugin,
+				"implementation 'com.google.firebase:firebase-analytics'", "firebase-analytics");
+		assertEquals("""
+				plugins {
+				    id "com.android.application"
+				}
+
+				apply plugin: 'com.google.gms.google-services'
+
+				android {
+				    dependencies {
+				    }
+				}
+
+				dependencies {
+				    implementation 'com.google.firebase:firebase-analytics'
+				}
+				""", withDependency);
+
+		assertThrows(LocalEditException.class, () -> GradleEditor.addToBlock("android {}\n", List.of("buildscript", "dependencies"),
+				"classpath 'x'", "x"));
+	}
+
+	@Test
+	void mainBecomesAsyncWithInitialisationFirst() throws Exception {
+		String dart = """
+				import 'package:flutter/material.dart';
+
+				void main() => runApp(const MyApp());
+				""";
+		String edited = MainDartEditor.addToMainStart(
+				MainDartEditor.addImport(dart, "package:firebase_core/firebase_core.dart"),
+				List.of("WidgetsFlutterBinding.ensureInitialized();", "await Firebase.initializeApp();"));
+		assertEquals("""
+				import 'package:flutter/material.dart';
+				import 'package:firebase_core/firebase_core.dart';
+
+				Future<void> main() async {
+				  WidgetsFlutterBinding.ensureInitialized();
+				  await Firebase.initializeApp();
+				  runApp(const MyApp());
+				}
+				""", edited);
+		assertEquals(edited, MainDartEditor.addToMainStart(
+				MainDartEditor.addImport(edited, "package:firebase_core/firebase_core.dart"),
+				List.of("WidgetsFlutterBinding.ensureInitialized();", "await Firebase.initializeApp();")));
+	}
+
+}
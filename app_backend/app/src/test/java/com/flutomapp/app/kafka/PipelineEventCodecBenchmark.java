@@ -0,0 +1,97 @@
+package com.flutomapp.app.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Size and encode+decode throughput of a finalize-sized pipeline event: the old
+ * JSON String path (StringSerializer) against the Smile codec. Not picked up by
+ * the default surefire includes; run with
+ * mvn test -Dtest=PipelineEventCodecBenchmark
+ */
+class PipelineEventCodecBenchmark {
+
+	private static final int WARMUP = 20_000;
+	private static final int ITERATIONS = 100_000;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void smileIsSmallerAndFaster() throws IOException {
+		ProjectCreationEventSample event = finalizeEvent();
+		PipelineEventCodec smile = new JacksonPipelineEventCodec("smile", objectMapper.copyWith(new SmileFactory()));
+
+		byte[] jsonBytes = jsonPathEncode(event);
+		byte[] smileBytes = smile.encode(event);
+		assertEquals(objectMapper.writeValueAsString(event), objectMapper.writeValueAsString(smile.decode(smileBytes)));
+
+		double jsonRate = opsPerSecond(() -> {
+			String json = new String(jsonPathEncode(event), StandardCharsets.UTF_8);
+			return objectMapper.readValue(json, ProjectCreationEventSample.class);
+		});
+		double smileRate = opsPerSecond(() -> smile.decode(smile.encode(event)));
+
+		System.out.printf("size:       JSON %,d B, Smile %,d B%n", jsonBytes.length, smileBytes.length);
+		System.out.printf("round trip: JSON %,.0f ops/s, Smile %,.0f ops/s%n", jsonRate, smileRate);
+		assertTrue(smileBytes.length < jsonBytes.length);
+		assertTrue(smileRate > jsonRate);
+	}
+
+	private byte[] jsonPathEncode(ProjectCreationEventSample event) throws IOException {
+		return objectMapper.writeValueAsString(event).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static double opsPerSecond(RoundTrip roundTrip) throws IOException {
+		for (int i = 0; i < WARMUP; i++) {
+			roundTrip.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			roundTrip.run();
+		}
+		return ITERATIONS / ((System.nanoTime() - start) / 1e9);
+	}
+
+	private static ProjectCreationEventSample finalizeEvent() {
+		ProjectCreationEventSample event = new ProjectCreationEventSample();
+		event.setUniqueId("6718f2a4c9e77b2d1f3a9c01");
+		event.setProjectName("shop_app");
+		event.setOrganisationId("6718f2a4c9e77b2d1f3a9b77");
+		event.setOrganisationName("com.example");
+		event.setDescription("A shop app");
+		event.setEnvKeys(List.of("API_URL", "API_KEY", "SENTRY_DSN"));
+		event.setEnvValues(List.of("https://api.example.com", "k-1234567890abcdef", "https://abc@sentry.io/1"));
+		event.setAndroidPermissions(List.of("android.permission.INTERNET", "android.permission.CAMERA", "android.permission.ACCESS_FINE_LOCATION"));
+		event.setRequireFirebase(true);
+		event.setGoogleServicesJson(new BlobRef("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", 1_874));
+		event.setAppIcon(new BlobRef("60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752", 48_213));
+		event.setEnvConfigured(true);
+		event.setPermissionsConfigured(true);
+		event.setAppIconConfigured(true);
+		event.setFirebaseConfigured(true);
+		event.getPubspecPatch().addDependency("flutter_dotenv", "^5.1.0");
+		event.getPubspecPatch().addDependency("firebase_core", "^3.6.0");
+		event.getPubspecPatch().addDevDependency("flutter_lints", "^5.0.0");
+		event.getPubspecPatch().addAsset(".env");
+		event.getPubspecPatch().addAsset("assets/images/");
+		event.getMainDartPatch().addImport("package:flutter_dotenv/flutter_dotenv.dart");
+		event.getMainDartPatch().addImport("package:firebase_core/firebase_core.dart");
+		event.getMainDartPatch().addStartStatement("WidgetsFlutterBinding.ensureInitialized();");
+		event.getMainDartPatch().addStartStatement("await dotenv.load(fileName: \".env\");");
+		event.getMainDartPatch().addStartStatement("await Firebase.initializeApp();");
+		return event;
+	}
+
+	@FunctionalInterface
+	private interface RoundTrip {
+		ProjectCreationEventSample run() throws IOException;
+	}
+}
@@ -0,0 +1,104 @@
+package com.flutomapp.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlutterTemplatePoolTests {
+
+	private static final String KOTLIN = "android/app/src/main/kotlin/";
+
+	@TempDir
+	Path project;
+
+	@Test
+	void personaliseRenamesTheKotlinPackage() throws Exception {
+		write(KOTLIN + "org/pooltemplateorg/pool_template_app/MainActivity.kt",
+				"package org.pooltemplateorg.pool_template_app\n");
+		write("android/app/build.gradle.kts", """
+				namespace = "org.pooltemplateorg.pool_template_app"
+				applicationId = "org.pooltemplateorg.pool_template_app"
+				""");
+
+		FlutterTemplatePool.personalise(project, "my_shop", "com.example.store", "Shop");
+
+		assertEquals("package com.example.store.my_shop\n",
+				read(KOTLIN + "com/example/store/my_shop/MainActivity.kt"));
+		assertFalse(Files.exists(project.resolve(KOTLIN + "org")), "emptied placeholder directories are removed");
+		assertEquals("""
+				namespace = "com.example.store.my_shop"
+				applicationId = "com.example.store.my_shop"
+				""", read("android/app/build.gradle.kts"));
+	}
+
+	@Test
+	void personaliseUsesCamelAndTitleCaseNamesOnIos() throws Exception {
+		write("ios/Runner.xcodeproj/project.pbxproj",
+				"PRODUCT_BUNDLE_IDENTIFIER = org.pooltemplateorg.poolTemplateApp;\n"
+						+ "PRODUCT_BUNDLE_IDENTIFIER = org.pooltemplateorg.poolTemplateApp.RunnerTests;\n");
+		write("ios/Runner/Info.plist", "<key>CFBundleDisplayName</key>\n<string>Pool Template App</string>\n"
+				+ "<key>CFBundleName</key>\n<string>pool_template_app</string>\n");
+
+		FlutterTemplatePool.personalise(project, "my_shop", "com.example.store", "Shop");
+
+		assertEquals("PRODUCT_BUNDLE_IDENTIFIER = com.example.store.myShop;\n"
+				+ "PRODUCT_BUNDLE_IDENTIFIER = com.example.store.myShop.RunnerTests;\n",
+				read("ios/Runner.xcodeproj/project.pbxproj"));
+		assertEquals("<key>CFBundleDisplayName</key>\n<string>My Shop</string>\n"
+				+ "<key>CFBundleName</key>\n<string>my_shop</string>\n", read("ios/Runner/Info.plist"));
+	}
+
+	@Test
+	void personaliseEscapesTheDescriptionPerFormat() throws Exception {
+		write("pubspec.yaml", "name: pool_template_app\ndescription: \"pooltemplatedescription\"\n");
+		write("web/manifest.json", "{\"name\": \"pool_template_app\", \"description\": \"pooltemplatedescription\"}\n");
+		write("web/index.html", "<meta name=\"description\" content=\"pooltemplatedescription\">\n");
+		write("README.md", "# pool_template_app\n\npooltemplatedescription\n");
+
+		FlutterTemplatePool.personalise(project, "my_shop", "com.example.store", "Say \"hi\" & <b>buy</b> \\ now");
+
+		assertEquals("name: my_shop\ndescription: \"Say \\\"hi\\\" & <b>buy</b> \\\\ now\"\n", read("pubspec.yaml"));
+		assertEquals("{\"name\": \"my_shop\", \"description\": \"Say \\\"hi\\\" & <b>buy</b> \\\\ now\"}\n",
+				read("web/manifest.json"));
+		assertEquals("<meta name=\"description\" content=\"Say &quot;hi&quot; &amp; &lt;b&gt;buy&lt;/b&gt; \\ now\">\n",
+				read("web/index.html"));
+		assertEquals("# my_shop\n\nSay \"hi\" & <b>buy</b> \\ now\n", read("README.md"));
+	}
+
+	@Test
+	void personaliseLeavesBinariesAlone() throws Exception {
+		byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0, 'p', 'o', 'o', 'l', '_', 't', 'e', 'm', 'p', 'l', 'a', 't', 'e', '_', 'a', 'p', 'p'};
+		Files.createDirectories(project.resolve("web/icons"));
+		Files.write(project.resolve("web/icons/Icon-192.png"), png);
+
+		FlutterTemplatePool.personalise(project, "my_shop", "com.example.store", "Shop");
+
+		assertArrayEquals(png, Files.readAllBytes(project.resolve("web/icons/Icon-192.png")));
+		assertTrue(Files.exists(project.resolve("web/icons")));
+	}
+
+	@Test
+	void camelAndTitleCaseFollowFlutterCreate() {
+		assertEquals("myShopApp", FlutterTemplatePool.camelCase("my_shop_app"));
+		assertEquals("My Shop App", FlutterTemplatePool.titleCase("my_shop_app"));
+		assertEquals("shop", FlutterTemplatePool.camelCase("shop"));
+	}
+
+	private void write(String relative, String content) throws IOException {
+		Path file = project.resolve(relative);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+
+	private String read(String relative) throws IOException {
+		return Files.readString(project.resolve(relative));
+	}
+}
@@ -0,0 +1,185 @@
+package com.flutomapp.app.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flutomapp.app.gemini.GeminiBulkheads;
+import com.flutomapp.app.gemini.GeminiCachedContent;
+import com.flutomapp.app.gemini.GeminiCallContext;
+import com.flutomapp.app.gemini.GeminiCircuitBreaker;
+import com.flutomapp.app.gemini.GeminiHedgingPolicy;
+import com.flutomapp.app.gemini.GeminiHttpMetrics;
+import com.flutomapp.app.gemini.GeminiModelRouter;
+import com.flutomapp.app.gemini.GeminiRateLimiter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Context caching against a local stub of the Gemini REST API.
+ */
+class GeminiAIServiceCacheTests {
+
+	private static final List<Map<String, String>> PREAMBLE = List.of(
+			Map.of("role", "user", "text", "You are an expert Flutter/Dart developer."),
+			Map.of("role", "model", "text", "Understood."));
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private final List<JsonNode> generateBodies = new CopyOnWriteArrayList<>();
+	private volatile boolean cacheGone;
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private GeminiRateLimiter rateLimiter;
+	private SimpleMeterRegistry registry;
+	private GeminiAIService service;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+
+		registry = new SimpleMeterRegistry();
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		rateLimiter = new GeminiRateLimiter(6000, 100_000_000, executor, registry);
+		GeminiCircuitBreaker circuitBreaker = new GeminiCircuitBreaker(50, 10, 20, 30_000, 3, registry);
+		service = new GeminiAIService(
+				HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(),
+				executor,
+				new GeminiHttpMetrics(registry),
+				rateLimiter,
+				circuitBreaker,
+				new GeminiBulkheads(5, 20, 3, 50, registry),
+				new GeminiModelRouter(new MockEnvironment(), registry),
+				new GeminiHedgingPolicy(false, 95, 200, 20, 250, 0.1, executor, circuitBreaker, rateLimiter, registry),
+				usage -> { });
+		ReflectionTestUtils.setField(service, "apiKey", "test-key");
+		ReflectionTestUtils.setField(service, "baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+		ReflectionTestUtils.setField(service, "model", "test-model");
+		ReflectionTestUtils.setField(service, "cacheEnabled", true);
+		ReflectionTestUtils.setField(service, "cacheMinTokens", 1L);
+		ReflectionTestUtils.setField(service, "requestTimeoutMs", 5_000L);
+		ReflectionTestUtils.setField(service, "maxRetries", 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+		rateLimiter.shutdown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	void cachedCallsSendOnlyTheHistoryAfterThePrefix() {
+		GeminiCachedContent cache = service.createCachedContent(PREAMBLE, Duration.ofMinutes(5), GeminiCallContext.interactive("test"));
+		assertNotNull(cache);
+		assertEquals("cachedContents/abc", cache.getName());
+
+		String result = service.generateContentWithContext("Generate screen 1", withRecentScreen(), GeminiCallContext.interactive("test", cache));
+
+		assertEquals("ok", result);
+		JsonNode body = generateBodies.get(generateBodies.size() - 1);
+		assertEquals("cachedContents/abc", body.path("cachedContent").asText());
+		// Recent-screen message + prompt; the two preamble messages come from the cache
+		assertEquals(2, body.path("contents").size());
+		assertEquals(2048.0, registry.get("gemini.cache.tokens_saved").counter().count());
+	}
+
+	@Test
+	void expiredCacheFallsBackToTheFullHistory() {
+		GeminiCachedContent cache = service.createCachedContent(PREAMBLE, Duration.ofMinutes(5), GeminiCallContext.interactive("test"));
+		cacheGone = true;
+
+		String result = service.generateContentWithContext("Generate screen 1", withRecentScreen(), GeminiCallContext.interactive("test", cache));
+
+		assertEquals("ok", result);
+		assertEquals(2, generateBodies.size());
+		JsonNode retried = generateBodies.get(1);
+		assertTrue(retried.path("cachedContent").isMissingNode());
+		assertEquals(4, retried.path("contents").size());
+		assertFalse(cache.isValid());
+		assertEquals(1.0, registry.get("gemini.cache.fallbacks").counter().count());
+	}
+
+	@Test
+	void smallPrefixesAreNotCached() {
+		ReflectionTestUtils.setField(service, "cacheMinTokens", 1024L);
+
+		assertNull(service.createCachedContent(PREAMBLE, Duration.ofMinutes(5), GeminiCallContext.interactive("test")));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	void deleteRemovesTheCache() throws InterruptedException {
+		GeminiCachedContent cache = service.createCachedContent(PREAMBLE, Duration.ofMinutes(5), GeminiCallContext.interactive("test"));
+
+		service.deleteCachedContent(cache);
+
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!requests.contains("DELETE /v1beta/cachedContents/abc") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(requests.contains("DELETE /v1beta/cachedContents/abc"));
+		assertFalse(cache.isValid());
+	}
+
+	private List<Map<String, String>> withRecentScreen() {
+		List<Map<String, String>> history = new ArrayList<>(PREAMBLE);
+		history.add(Map.of("role", "user", "text", "Recent screen 'Home' (home.dart) uses: Scaffold"));
+		return history;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.add(exchange.getRequestMethod() + " " + path);
+		byte[] requestBody = exchange.getRequestBody().readAllBytes();
+
+		if (path.equals("/v1beta/cachedContents")) {
+			respond(exchange, 200, "{\"name\":\"cachedContents/abc\",\"usageMetadata\":{\"totalTokenCount\":2048}}");
+		} else if (path.equals("/v1beta/cachedContents/abc")) {
+			respond(exchange, 200, "{}");
+		} else if (path.equals("/v1beta/models/test-model:generateContent")) {
+			JsonNode body = objectMapper.readTree(requestBody);
+			generateBodies.add(body);
+			if (cacheGone && body.has("cachedContent")) {
+				respond(exchange, 404, "{\"error\":{\"code\":404,\"message\":\"CachedContent not found\"}}");
+			} else {
+				respond(exchange, 200, "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"ok\"}]}}]}");
+			}
+		} else {
+			respond(exchange, 404, "{}");
+		}
+	}
+
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
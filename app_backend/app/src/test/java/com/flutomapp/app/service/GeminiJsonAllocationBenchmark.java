@@ -0,0 +1,131 @@
+package com.flutomapp.app.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flutomapp.app.gemini.GeminiRequest;
+import com.flutomapp.app.gemini.GeminiResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation comparison of the old Map/JsonNode request and response handling
+ * against the typed records with streaming generator/parser. Not picked up by
+ * the default surefire includes; run with
+ * mvn test -Dtest=GeminiJsonAllocationBenchmark
+ */
+class GeminiJsonAllocationBenchmark {
+
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 500;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void streamingHandlingAllocatesLess() throws IOException {
+		// Screen prompt with base code and history, and an ~8k-token reply
+		String baseCode = "import 'package:flutter/material.dart';\n".repeat(2_000);
+		List<Map<String, String>> history = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			history.add(Map.of("role", i % 2 == 0 ? "user" : "model", "text", "Recent screen " + i + " uses:\n" + baseCode.substring(0, 4_000)));
+		}
+		String prompt = "Generate the screen.\n" + baseCode;
+		byte[] response = objectMapper.writeValueAsBytes(Map.of(
+				"candidates", List.of(Map.of(
+						"content", Map.of("role", "model", "parts", List.of(Map.of("text", "class Screen {}\n".repeat(2_000)))),
+						"finishReason", "STOP")),
+				"usageMetadata", Map.of("promptTokenCount", 30_000, "candidatesTokenCount", 8_000, "totalTokenCount", 38_000)));
+
+		assertEquals(parseWithTree(response), parseStreaming(response));
+
+		long oldRequest = allocatedPerCall(() -> serializeMaps(prompt, history));
+		long newRequest = allocatedPerCall(() -> serializeRecords(prompt, history));
+		long oldResponse = allocatedPerCall(() -> parseWithTree(response));
+		long newResponse = allocatedPerCall(() -> parseStreaming(response));
+
+		System.out.printf("request:  Map graph %,d B/call, records + generator %,d B/call%n", oldRequest, newRequest);
+		System.out.printf("response: String + JsonNode %,d B/call, streaming parser %,d B/call%n", oldResponse, newResponse);
+		assertTrue(newRequest < oldRequest);
+		assertTrue(newResponse < oldResponse);
+	}
+
+	private byte[] serializeMaps(String prompt, List<Map<String, String>> history) throws IOException {
+		List<Map<String, Object>> contents = new ArrayList<>();
+		for (Map<String, String> message : history) {
+			Map<String, Object> content = new HashMap<>();
+			content.put("role", message.get("role"));
+			Map<String, String> part = new HashMap<>();
+			part.put("text", message.get("text"));
+			content.put("parts", List.of(part));
+			contents.add(content);
+		}
+		Map<String, Object> current = new HashMap<>();
+		current.put("role", "user");
+		current.put("parts", List.of(Map.of("text", prompt)));
+		contents.add(current);
+		Map<String, Object> generationConfig = new HashMap<>();
+		generationConfig.put("temperature", 0.7);
+		generationConfig.put("topK", 40);
+		generationConfig.put("topP", 0.95);
+		generationConfig.put("maxOutputTokens", 8192);
+		Map<String, Object> requestBody = new HashMap<>();
+		requestBody.put("contents", contents);
+		requestBody.put("generationConfig", generationConfig);
+		return objectMapper.writeValueAsBytes(requestBody);
+	}
+
+	private ByteArrayOutputStream serializeRecords(String prompt, List<Map<String, String>> history) throws IOException {
+		List<GeminiRequest.Content> contents = new ArrayList<>(history.size() + 1);
+		for (Map<String, String> message : history) {
+			contents.add(new GeminiRequest.Content(message.get("role"), message.get("text")));
+		}
+		contents.add(new GeminiRequest.Content("user", prompt));
+		// Same as GeminiAIService: pre-sized buffer, published without a final copy
+		GeminiRequest request = new GeminiRequest(contents, GeminiRequest.GenerationConfig.DEFAULT, null);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(request.estimatedJsonSize());
+		try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+			request.writeTo(generator);
+		}
+		return out;
+	}
+
+	// Old path: BodyHandlers.ofString() then readTree
+	private String parseWithTree(byte[] body) throws IOException {
+		JsonNode root = objectMapper.readTree(new String(body, StandardCharsets.UTF_8));
+		return root.path("candidates").path(0).path("content").path("parts").path(0).path("text").asText();
+	}
+
+	private String parseStreaming(byte[] body) throws IOException {
+		try (JsonParser parser = objectMapper.createParser(body)) {
+			return GeminiResponse.read(parser).text();
+		}
+	}
+
+	private long allocatedPerCall(IoCall call) throws IOException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		for (int i = 0; i < WARMUP; i++) {
+			call.run();
+		}
+		long before = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < ITERATIONS; i++) {
+			call.run();
+		}
+		return (threads.getCurrentThreadAllocatedBytes() - before) / ITERATIONS;
+	}
+
+	private interface IoCall {
+		Object run() throws IOException;
+	}
+}
@@ -0,0 +1,89 @@
+package com.flutomapp.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LauncherIconGeneratorTests {
+
+	private final LauncherIconGenerator generator = new LauncherIconGenerator();
+
+	@TempDir
+	Path project;
+
+	@Test
+	void rendersEveryDensityAndTheAdaptiveIcon() throws Exception {
+		Path iconSet = Files.createDirectories(project.resolve("ios/Runner/Assets.xcassets/AppIcon.appiconset"));
+		Files.write(iconSet.resolve("Icon-App-20x20@2x.png"), png(new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB)));
+		Files.write(iconSet.resolve("Icon-App-1024x1024@1x.png"), png(new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB)));
+
+		generator.generate(new ByteArrayInputStream(png(icon(512, 512))), project);
+
+		Path res = project.resolve("android/app/src/main/res");
+		assertEquals(48, width(res.resolve("mipmap-mdpi/ic_launcher.png")));
+		assertEquals(72, width(res.resolve("mipmap-hdpi/ic_launcher.png")));
+		assertEquals(192, width(res.resolve("mipmap-xxxhdpi/ic_launcher.png")));
+		assertEquals(432, width(res.resolve("drawable-xxxhdpi/ic_launcher_foreground.png")));
+		assertTrue(Files.readString(res.resolve("mipmap-anydpi-v26/ic_launcher.xml")).contains("@drawable/ic_launcher_foreground"));
+		// Background from the image's border
+		assertTrue(Files.readString(res.resolve("values/ic_launcher_background.xml")).contains("#1E88E5"));
+
+		// iOS icons keep their sizes and lose alpha
+		BufferedImage marketing = ImageIO.read(iconSet.resolve("Icon-App-1024x1024@1x.png").toFile());
+		assertEquals(1024, marketing.getWidth());
+		assertFalse(marketing.getColorModel().hasAlpha());
+		assertEquals(40, width(iconSet.resolve("Icon-App-20x20@2x.png")));
+	}
+
+	@Test
+	void foregroundStaysInsideTheSafeZone() throws Exception {
+		generator.generate(new ByteArrayInputStream(png(icon(300, 150))), project);
+
+		BufferedImage foreground = ImageIO.read(project.resolve("android/app/src/main/res/drawable-mdpi/ic_launcher_foreground.png").toFile());
+		// 108px layer, 72px safe zone from 18px: the outer ring is transparent, the centre is drawn
+		assertEquals(0, foreground.getRGB(10, 54) >>> 24);
+		assertEquals(0, foreground.getRGB(54, 30) >>> 24);
+		assertTrue(foreground.getRGB(54, 54) >>> 24 > 0);
+	}
+
+	@Test
+	void rejectsWhatIsNotAnImage() {
+		assertThrows(IllegalArgumentException.class,
+				() -> generator.generate(new ByteArrayInputStream("not an image".getBytes()), project));
+	}
+
+	private static BufferedImage icon(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(new Color(0x1E88E5));
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.WHITE);
+		g.fillOval(width / 4, height / 4, width / 2, height / 2);
+		g.dispose();
+		return image;
+	}
+
+	private static byte[] png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	private static int width(Path png) throws IOException {
+		return ImageIO.read(png.toFile()).getWidth();
+	}
+}
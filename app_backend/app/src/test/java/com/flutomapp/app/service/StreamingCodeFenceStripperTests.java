@@ -0,0 +1,70 @@
+package com.flutomapp.app.service;
+
+import com.flutomapp.app.gemini.StreamingCodeFenceStripper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Here rather than under gemini: the reference is BuildService's (package-private) cleanGeneratedCode
+class StreamingCodeFenceStripperTests {
+
+	private static final String FENCED_DART = "```dart\nimport 'package:flutter/material.dart';\n\nvoid main() => runApp(const App());\n```\n";
+	private static final String FENCED_PLAIN = "```\nclass App extends StatelessWidget {}\n```";
+	private static final String UNFENCED = "  \nimport 'x.dart';\nfinal s = '`a` ``` b';  \n\n";
+
+	@Test
+	void fencedWithLanguageTag() {
+		assertEveryChunkingMatches(FENCED_DART);
+		assertEquals("import 'package:flutter/material.dart';\n\nvoid main() => runApp(const App());",
+				stream(List.of(FENCED_DART)));
+	}
+
+	@Test
+	void fencedWithoutLanguageTag() {
+		assertEveryChunkingMatches(FENCED_PLAIN);
+		assertEquals("class App extends StatelessWidget {}", stream(List.of(FENCED_PLAIN)));
+	}
+
+	@Test
+	void unfenced() {
+		assertEveryChunkingMatches(UNFENCED);
+		assertEquals("import 'x.dart';\nfinal s = '`a` ``` b';", stream(List.of(UNFENCED)));
+	}
+
+	@Test
+	void fenceSplitAcrossChunks() {
+		assertEquals("import 'a.dart';", stream(List.of("`", "``da", "rt\nimport 'a.dart';\n`", "`", "`\n")));
+		assertEquals("class A {}", stream(List.of("  ``", "`", "\nclass A {}", "\n``", "`")));
+		assertEveryChunkingMatches("```dart");
+		assertEveryChunkingMatches("```dart\n```");
+		assertEveryChunkingMatches("```darts are fun\nprint(1);\n```");
+		assertEveryChunkingMatches("`x`");
+		assertEveryChunkingMatches("   ");
+	}
+
+	// Split at every boundary into two chunks, at every pair of boundaries into three, and one character at a time
+	private static void assertEveryChunkingMatches(String input) {
+		String expected = BuildService.cleanGeneratedCode(input);
+		for (int i = 0; i <= input.length(); i++) {
+			assertEquals(expected, stream(List.of(input.substring(0, i), input.substring(i))));
+			for (int j = i; j <= input.length(); j++) {
+				assertEquals(expected, stream(List.of(input.substring(0, i), input.substring(i, j), input.substring(j))));
+			}
+		}
+		List<String> characters = new ArrayList<>();
+		input.chars().forEach(c -> characters.add(String.valueOf((char) c)));
+		assertEquals(expected, stream(characters));
+	}
+
+	private static String stream(List<String> chunks) {
+		StreamingCodeFenceStripper stripper = new StreamingCodeFenceStripper();
+		StringBuilder out = new StringBuilder();
+		for (String chunk : chunks) {
+			out.append(stripper.accept(chunk));
+		}
+		return out.append(stripper.finish()).toString();
+	}
+}
@@ -1,3 +1,4 @@
+import 'dart:convert';
 import 'dart:io';
 import 'dart:ui';
 
@@ -199,15 +200,22 @@ class _CreateProjectScreenState extends State<CreateProjectScreen> {
       }
 
       setState(() {
-        _loadingMessage = '⚙️ Building and configuring... This may take a moment.';
+        _loadingMessage = '⚙️ Uploading project details...';
       });
 
       final response = await request.send();
       final responseBody = await response.stream.bytesToString();
 
-      if (response.statusCode == 200 || response.statusCode == 201) {
+      if (response.statusCode == 202) {
+        // Accepted: the project is created in the background, its status shows PENDING until then
+        _showGlassSnackBar('✅ Project accepted! Setting it up in the background...', isError: false);
+        Navigator.pop(context);
+      } else if (response.statusCode == 200 || response.statusCode == 201) {
         _showGlassSnackBar('✅ Project created successfully!', isError: false);
         Navigator.pop(context);
+      } else if (response.statusCode == 400) {
+        final error = (jsonDecode(responseBody) as Map<String, dynamic>)['error'];
+        _showGlassSnackBar('Error: ${error ?? response.statusCode}', isError: true);
       } else {
         _showGlassSnackBar(
           'Error: ${response.statusCode}',